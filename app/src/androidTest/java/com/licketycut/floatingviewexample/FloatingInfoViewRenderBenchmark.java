@@ -0,0 +1,306 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.licketycut.floatingviewexample.floatingviews.FloatingInfoBannerView;
+import com.licketycut.floatingviewexample.utils.LatencyHistogram;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the cost of measuring, laying out and drawing our info view's xml layout
+ * against its flat banner layout, and how many times each paints its pixels.
+ * Results are logged and reported as instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FloatingInfoViewRenderBenchmark {
+    private static final String TAG = "InfoViewRenderBenchmark";
+
+    private static final int NUM_WARMUPS = 50;
+    private static final int NUM_ITERATIONS = 500;
+
+    private static final String TITLE = "Floating info title";
+    private static final String INFO = "Floating info text which is long enough to wrap "
+            + "onto a second line on most displays.";
+
+    @Test
+    public void flatLayoutIsNoSlowerAndPaintsLess() {
+        final Result[] results = new Result[2];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                results[0] = render("xml", R.layout.floating_info);
+                results[1] = render("flat", R.layout.floating_info_flat);
+            }
+        });
+        Result xml = results[0];
+        Result flat = results[1];
+
+        Bundle status = new Bundle();
+        xml.report(status);
+        flat.report(status);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+
+        // Fewer overlapping fills is what the flat layout is for.
+        assertTrue("flat overdraw " + flat.overdraw + " > xml overdraw " + xml.overdraw,
+                flat.overdraw <= xml.overdraw);
+    }
+
+    private static Result render(String name, int layoutId) {
+        Context context = InstrumentationRegistry.getTargetContext();
+        View view = LayoutInflater.from(context).inflate(layoutId, null);
+        if (view instanceof FloatingInfoBannerView) {
+            ((FloatingInfoBannerView) view).setTitle(TITLE);
+            ((FloatingInfoBannerView) view).setInfo(INFO);
+        } else {
+            ((TextView) view.findViewById(R.id.text_view_title)).setText(TITLE);
+            ((TextView) view.findViewById(R.id.text_view_info)).setText(INFO);
+        }
+
+        int width = context.getResources().getDisplayMetrics().widthPixels;
+        int widthSpec = View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY);
+        int heightSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+        view.measure(widthSpec, heightSpec);
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+        Bitmap bitmap = Bitmap.createBitmap(view.getWidth(), view.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        Result result = new Result(name);
+        for (int i = 0; i < NUM_WARMUPS + NUM_ITERATIONS; i++) {
+            boolean record = i >= NUM_WARMUPS;
+            // Make every view in the hierarchy measure again, as a content change would.
+            forceLayout(view);
+
+            long start = System.nanoTime();
+            view.measure(widthSpec, heightSpec);
+            long measured = System.nanoTime();
+            view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+            long laidOut = System.nanoTime();
+            view.draw(canvas);
+            long drawn = System.nanoTime();
+
+            if (record) {
+                result.measure.record(measured - start);
+                result.layout.record(laidOut - measured);
+                result.draw.record(drawn - laidOut);
+            }
+        }
+
+        OverdrawCanvas overdrawCanvas = new OverdrawCanvas(bitmap);
+        view.draw(overdrawCanvas);
+        result.overdraw = overdrawCanvas.getFilledArea() / (float) (bitmap.getWidth()
+                * bitmap.getHeight());
+        bitmap.recycle();
+
+        Log.i(TAG, result.toString());
+        return result;
+    }
+
+    private static void forceLayout(View view) {
+        view.forceLayout();
+        if (view instanceof ViewGroup) {
+            ViewGroup viewGroup = (ViewGroup) view;
+            for (int i = 0; i < viewGroup.getChildCount(); i++) {
+                forceLayout(viewGroup.getChildAt(i));
+            }
+        }
+    }
+
+    private static final class Result {
+        private final String name;
+        private final LatencyHistogram measure = new LatencyHistogram();
+        private final LatencyHistogram layout = new LatencyHistogram();
+        private final LatencyHistogram draw = new LatencyHistogram();
+        // Filled area divided by the view's area, one means each pixel is painted once.
+        private float overdraw;
+
+        Result(String name) {
+            this.name = name;
+        }
+
+        void report(Bundle status) {
+            status.putLong(name + "MeasureP50Micros", measure.getPercentileMicros(50));
+            status.putLong(name + "LayoutP50Micros", layout.getPercentileMicros(50));
+            status.putLong(name + "DrawP50Micros", draw.getPercentileMicros(50));
+            status.putFloat(name + "Overdraw", overdraw);
+        }
+
+        @Override
+        public String toString() {
+            return name + ": measure p50=" + measure.getPercentileMicros(50)
+                    + "us p90=" + measure.getPercentileMicros(90)
+                    + "us layout p50=" + layout.getPercentileMicros(50)
+                    + "us p90=" + layout.getPercentileMicros(90)
+                    + "us draw p50=" + draw.getPercentileMicros(50)
+                    + "us p90=" + draw.getPercentileMicros(90)
+                    + "us overdraw=" + overdraw;
+        }
+    }
+
+    /**
+     * Canvas which adds up the area of every fill drawn to it, text aside.
+     * Some platform versions implement one draw call with another,
+     * so only the outermost call is counted.
+     */
+    private static final class OverdrawCanvas extends Canvas {
+        private final RectF pathBounds = new RectF();
+        private long filledArea = 0;
+        private int depth = 0;
+
+        OverdrawCanvas(Bitmap bitmap) {
+            super(bitmap);
+        }
+
+        long getFilledArea() {
+            return filledArea;
+        }
+
+        private void begin(float width, float height, Paint paint) {
+            if (depth++ == 0 && (paint == null || paint.getStyle() != Paint.Style.STROKE)) {
+                filledArea += Math.round(Math.abs(width) * Math.abs(height));
+            }
+        }
+
+        private void end() {
+            depth--;
+        }
+
+        @Override
+        public void drawPaint(Paint paint) {
+            begin(getWidth(), getHeight(), paint);
+            try {
+                super.drawPaint(paint);
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public void drawColor(int color) {
+            begin(getWidth(), getHeight(), null);
+            try {
+                super.drawColor(color);
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public void drawColor(int color, PorterDuff.Mode mode) {
+            begin(getWidth(), getHeight(), null);
+            try {
+                super.drawColor(color, mode);
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+            begin(right - left, bottom - top, paint);
+            try {
+                super.drawRect(left, top, right, bottom, paint);
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public void drawRect(RectF rect, Paint paint) {
+            begin(rect.width(), rect.height(), paint);
+            try {
+                super.drawRect(rect, paint);
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public void drawRect(Rect rect, Paint paint) {
+            begin(rect.width(), rect.height(), paint);
+            try {
+                super.drawRect(rect, paint);
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+            begin(rect.width(), rect.height(), paint);
+            try {
+                super.drawRoundRect(rect, rx, ry, paint);
+            } finally {
+                end();
+            }
+        }
+
+        // Only called on Lollipop and later, where it doesn't exist we never see it.
+        @Override
+        public void drawRoundRect(float left, float top, float right, float bottom,
+                                  float rx, float ry, Paint paint) {
+            begin(right - left, bottom - top, paint);
+            try {
+                super.drawRoundRect(left, top, right, bottom, rx, ry, paint);
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public void drawPath(Path path, Paint paint) {
+            path.computeBounds(pathBounds, true);
+            begin(pathBounds.width(), pathBounds.height(), paint);
+            try {
+                super.drawPath(path, paint);
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+            begin(bitmap.getWidth(), bitmap.getHeight(), paint);
+            try {
+                super.drawBitmap(bitmap, left, top, paint);
+            } finally {
+                end();
+            }
+        }
+    }
+}
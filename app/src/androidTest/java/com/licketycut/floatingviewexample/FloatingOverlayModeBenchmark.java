@@ -0,0 +1,216 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Process;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.licketycut.floatingviewexample.floatingviews.FloatingInfoView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares hosting floating views in our own process with hosting them in the :overlay
+ * process, by the memory each process uses and the transactions needed to drive them.
+ * Results are logged and reported as instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FloatingOverlayModeBenchmark {
+    private static final String TAG = "OverlayModeBenchmark";
+
+    private static final int NUM_VIEWS = 10;
+    // Every floating view is moved once per frame for this many frames.
+    private static final int NUM_MOVE_FRAMES = 30;
+    private static final long FRAME_MS = 16;
+    // Time we give the overlay process to attach its floating views and settle.
+    private static final long SETTLE_MS = 1000;
+
+    private Context context;
+    private FloatingOverlayClient overlayClient;
+
+    @Test
+    public void compareInProcessWithOverlayProcess() throws IOException, InterruptedException {
+        FloatingViewBenchmarkSupport.grantDrawOverlayPermission();
+        context = InstrumentationRegistry.getTargetContext();
+        String overlayProcessName = context.getPackageName() + ":overlay";
+
+        long baselinePss = getPssKb(Process.myPid());
+        long inProcessPss = measureInProcess();
+        long appPss = measureOverlayAppPss();
+        int overlayPid = findPid(overlayProcessName);
+        assertTrue("Overlay process isn't running", overlayPid > 0);
+        long overlayPss = getPssKb(overlayPid);
+
+        final FloatingOverlayClient client = overlayClient;
+        Log.i(TAG, "baselinePss=" + baselinePss + "kB inProcessPss=" + inProcessPss
+                + "kB overlayAppPss=" + appPss + "kB overlayProcessPss=" + overlayPss
+                + "kB commands=" + client.getNumCommands()
+                + " mergedCommands=" + client.getNumMergedCommands()
+                + " transactions=" + client.getNumTransactions());
+
+        Bundle status = new Bundle();
+        status.putLong("baselinePssKb", baselinePss);
+        status.putLong("inProcessPssKb", inProcessPss);
+        status.putLong("overlayAppPssKb", appPss);
+        status.putLong("overlayProcessPssKb", overlayPss);
+        status.putLong("overlayCommands", client.getNumCommands());
+        status.putLong("overlayMergedCommands", client.getNumMergedCommands());
+        status.putLong("overlayTransactions", client.getNumTransactions());
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+
+        FloatingViewBenchmarkSupport.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                client.detachAll();
+                client.unbind();
+            }
+        });
+
+        // Commands are batched once per frame rather than sent one transaction each.
+        assertTrue(client.getNumTransactions() <= NUM_MOVE_FRAMES + 2);
+        assertTrue(client.getNumTransactions() < client.getNumCommands());
+    }
+
+    /** Attach our floating views in our own process and measure our process. */
+    private long measureInProcess() throws InterruptedException {
+        final List<FloatingView> floatingViews = new ArrayList<>();
+        FloatingViewBenchmarkSupport.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < NUM_VIEWS; i++) {
+                    FloatingView floatingView = new FloatingInfoView(context, "Title " + i,
+                            "Text " + i);
+                    floatingView.attachToWindow(context, false);
+                    floatingViews.add(floatingView);
+                }
+            }
+        });
+        FloatingViewBenchmarkSupport.waitFor(new FloatingViewBenchmarkSupport.Condition() {
+            @Override
+            public boolean isMet() {
+                for (FloatingView floatingView : floatingViews) {
+                    if (!floatingView.isAttached()) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        for (int frame = 0; frame < NUM_MOVE_FRAMES; frame++) {
+            final int offset = frame;
+            FloatingViewBenchmarkSupport.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < NUM_VIEWS; i++) {
+                        floatingViews.get(i).setLayoutPosition(offset, i * 100 + offset);
+                    }
+                }
+            });
+            Thread.sleep(FRAME_MS);
+        }
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        long pss = getPssKb(Process.myPid());
+
+        FloatingViewBenchmarkSupport.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (FloatingView floatingView : floatingViews) {
+                    floatingView.detachFromWindow(true);
+                    floatingView.unbindFloatingViewService();
+                }
+            }
+        });
+        return pss;
+    }
+
+    /**
+     * Drive the same floating views in the overlay process through our client,
+     * measuring our own process while they are attached.
+     */
+    private long measureOverlayAppPss() throws InterruptedException {
+        FloatingViewBenchmarkSupport.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                overlayClient = new FloatingOverlayClient(context);
+                overlayClient.bind();
+            }
+        });
+        final int[] ids = new int[NUM_VIEWS];
+        FloatingViewBenchmarkSupport.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < NUM_VIEWS; i++) {
+                    ids[i] = overlayClient.attachInfo("Title " + i, "Text " + i);
+                }
+            }
+        });
+        Thread.sleep(SETTLE_MS);
+
+        for (int frame = 0; frame < NUM_MOVE_FRAMES; frame++) {
+            final int offset = frame;
+            FloatingViewBenchmarkSupport.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < NUM_VIEWS; i++) {
+                        // Two moves per frame, the second should replace the first.
+                        overlayClient.move(ids[i], offset, i * 100);
+                        overlayClient.move(ids[i], offset, i * 100 + offset);
+                    }
+                }
+            });
+            Thread.sleep(FRAME_MS);
+        }
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        Thread.sleep(SETTLE_MS);
+        return getPssKb(Process.myPid());
+    }
+
+    private int findPid(String processName) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        List<ActivityManager.RunningAppProcessInfo> processes =
+                activityManager.getRunningAppProcesses();
+        if (processes != null) {
+            for (ActivityManager.RunningAppProcessInfo process : processes) {
+                if (processName.equals(process.processName)) {
+                    return process.pid;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private long getPssKb(int pid) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        Debug.MemoryInfo[] memoryInfo = activityManager.getProcessMemoryInfo(new int[] {pid});
+        return memoryInfo[0].getTotalPss();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/** Shared setup for instrumented benchmarks which attach real floating view windows. */
+final class FloatingViewBenchmarkSupport {
+
+    // Longest we will wait for a window to be attached or drawn.
+    private static final long TIMEOUT_MS = 5000;
+    private static final long POLL_INTERVAL_MS = 10;
+
+    private FloatingViewBenchmarkSupport() {
+    }
+
+    /**
+     * Grant ourselves draw overlay permission through the shell,
+     * skipping the benchmark if the device won't let us.
+     */
+    static void grantDrawOverlayPermission() throws IOException {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Context context = InstrumentationRegistry.getTargetContext();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            ParcelFileDescriptor output = instrumentation.getUiAutomation().executeShellCommand(
+                    "appops set " + context.getPackageName() + " SYSTEM_ALERT_WINDOW allow");
+            // The command has finished once its output has been closed.
+            FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(output);
+            try {
+                byte[] buffer = new byte[256];
+                while (in.read(buffer) != -1) {
+                    // Discard the output.
+                }
+            } finally {
+                in.close();
+            }
+        }
+        assumeTrue(FloatingView.checkDrawOverlayPermission(context));
+    }
+
+    static void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+
+    /** Wait until a condition checked on the main thread holds. */
+    static void waitFor(final Condition condition) throws InterruptedException {
+        final boolean[] result = new boolean[1];
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        do {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    result[0] = condition.isMet();
+                }
+            });
+            if (result[0]) {
+                return;
+            }
+            Thread.sleep(POLL_INTERVAL_MS);
+        } while (SystemClock.uptimeMillis() < deadline);
+        throw new AssertionError("Timed out waiting for condition");
+    }
+
+    interface Condition {
+        boolean isMet();
+    }
+
+    /**
+     * Run an action on the main thread and wait for the view to be drawn afterwards.
+     *
+     * @return  Time from starting the action until the view was drawn.
+     */
+    static long timeToDraw(final View view, final Runnable action) throws InterruptedException {
+        final CountDownLatch drawn = new CountDownLatch(1);
+        final long[] times = new long[2];
+        final ViewTreeObserver.OnDrawListener listener = new ViewTreeObserver.OnDrawListener() {
+            @Override
+            public void onDraw() {
+                if (drawn.getCount() > 0) {
+                    times[1] = System.nanoTime();
+                    drawn.countDown();
+                }
+            }
+        };
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                view.getViewTreeObserver().addOnDrawListener(listener);
+                times[0] = System.nanoTime();
+                action.run();
+            }
+        });
+        assertTrue("Timed out waiting for draw", drawn.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        // Listeners can't be removed while they are being dispatched.
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                view.getViewTreeObserver().removeOnDrawListener(listener);
+            }
+        });
+        return times[1] - times[0];
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.licketycut.floatingviewexample.floatingviews.FloatingButtonView;
+import com.licketycut.floatingviewexample.utils.LatencyHistogram;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares bringing a floating view back by showing it while hidden
+ * against attaching it again after a detach, timed until its window is drawn.
+ * Results are logged and reported as instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FloatingViewHideShowBenchmark {
+    private static final String TAG = "HideShowBenchmark";
+
+    private static final int NUM_WARMUPS = 5;
+    private static final int NUM_ITERATIONS = 50;
+
+    private Context context;
+    private FloatingView floatingView;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        FloatingViewBenchmarkSupport.grantDrawOverlayPermission();
+        context = InstrumentationRegistry.getTargetContext();
+        FloatingViewBenchmarkSupport.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                floatingView = new FloatingButtonView(context, "Button", "click", "exit");
+                floatingView.attachToWindow(context, false);
+            }
+        });
+        // We attach once the floating view service has connected.
+        FloatingViewBenchmarkSupport.waitFor(new FloatingViewBenchmarkSupport.Condition() {
+            @Override
+            public boolean isMet() {
+                return floatingView.isAttached();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        if (floatingView != null) {
+            FloatingViewBenchmarkSupport.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    floatingView.detachFromWindow(true);
+                    floatingView.unbindFloatingViewService();
+                }
+            });
+        }
+    }
+
+    @Test
+    public void showIsNoSlowerThanAttach() throws InterruptedException {
+        LatencyHistogram showToDraw = new LatencyHistogram();
+        LatencyHistogram attachToDraw = new LatencyHistogram();
+
+        for (int i = 0; i < NUM_WARMUPS + NUM_ITERATIONS; i++) {
+            boolean record = i >= NUM_WARMUPS;
+
+            FloatingViewBenchmarkSupport.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    floatingView.hide();
+                }
+            });
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+            long show = FloatingViewBenchmarkSupport.timeToDraw(floatingView.getRootView(),
+                    new Runnable() {
+                @Override
+                public void run() {
+                    floatingView.show();
+                }
+            });
+
+            FloatingViewBenchmarkSupport.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    floatingView.detachFromWindow(false);
+                }
+            });
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+            long attach = FloatingViewBenchmarkSupport.timeToDraw(floatingView.getRootView(),
+                    new Runnable() {
+                @Override
+                public void run() {
+                    floatingView.attachToWindow(context, false);
+                }
+            });
+
+            if (record) {
+                showToDraw.record(show);
+                attachToDraw.record(attach);
+            }
+        }
+
+        // Our own frame histograms only see the next frame callback, not the draw itself.
+        LatencyHistogram showToFrame = FloatingView.getShowToFrameLatency();
+        LatencyHistogram attachToFrame = FloatingView.getAttachToFrameLatency();
+        Log.i(TAG, "showToDraw p50=" + showToDraw.getPercentileMicros(50)
+                + "us p90=" + showToDraw.getPercentileMicros(90)
+                + "us attachToDraw p50=" + attachToDraw.getPercentileMicros(50)
+                + "us p90=" + attachToDraw.getPercentileMicros(90)
+                + "us showToFrame p50=" + showToFrame.getPercentileMicros(50)
+                + "us attachToFrame p50=" + attachToFrame.getPercentileMicros(50) + "us");
+
+        Bundle status = new Bundle();
+        status.putLong("showToDrawP50Micros", showToDraw.getPercentileMicros(50));
+        status.putLong("showToDrawP90Micros", showToDraw.getPercentileMicros(90));
+        status.putLong("attachToDrawP50Micros", attachToDraw.getPercentileMicros(50));
+        status.putLong("attachToDrawP90Micros", attachToDraw.getPercentileMicros(90));
+        status.putLong("showToFrameP50Micros", showToFrame.getPercentileMicros(50));
+        status.putLong("attachToFrameP50Micros", attachToFrame.getPercentileMicros(50));
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+
+        // Showing reuses our surface, attaching has to create one and draw its first frame.
+        assertTrue("show is slower than attach",
+                showToDraw.getPercentileMicros(50) <= attachToDraw.getPercentileMicros(50));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.os.Build;
+import android.util.Log;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.WindowManager;
+
+import static android.content.Context.WINDOW_SERVICE;
+
+/**
+ * Drag to dismiss target shared by every {@link FloatingViewTouchListener}.
+ * Its window is only inflated and attached once a drag begins and is removed when it ends.
+ * The hit rect is precomputed in screen coordinates whenever the target is laid out,
+ * so hit testing each move is a simple allocation free comparison.
+ * Must only be used from the main thread.
+ */
+class FloatingDismissTarget {
+    private static final String TAG = "FloatingDismissTarget";
+
+    // Scale of the target while a floating view is held over it.
+    private static final float HIGHLIGHT_SCALE = 1.25f;
+
+    // One and only instance of our singleton class.
+    private static FloatingDismissTarget ourInstance;
+
+    static FloatingDismissTarget getInstance(Context context) {
+        if (ourInstance == null) {
+            ourInstance = new FloatingDismissTarget(context.getApplicationContext());
+        }
+        return ourInstance;
+    }
+
+    private final Context context;
+    private final WindowManager windowManager;
+    private final int magnetRadius;
+
+    // Inflated the first time we are shown.
+    private View targetView;
+    private WindowManager.LayoutParams targetLayoutParams;
+    private boolean isShowing = false;
+    private boolean isHighlighted = false;
+
+    // Target bounds grown by our magnet radius, and the target center, in screen coordinates.
+    private final Rect hitRect = new Rect();
+    private int centerX, centerY;
+    private final int[] location = new int[2];
+
+    private FloatingDismissTarget(Context context) {
+        this.context = context;
+        windowManager = (WindowManager) context.getSystemService(WINDOW_SERVICE);
+        magnetRadius = context.getResources()
+                .getDimensionPixelSize(R.dimen.dismiss_target_magnet_radius);
+    }
+
+    /** Attach our window if it isn't already showing. */
+    void show() {
+        if (isShowing) {
+            return;
+        }
+        if (targetView == null) {
+            inflate();
+        }
+
+        // Until we have been laid out nothing can hit us.
+        hitRect.setEmpty();
+        setHighlighted(false);
+        try {
+            windowManager.addView(targetView, targetLayoutParams);
+            isShowing = true;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to show dismiss target : " + e.getMessage());
+        }
+    }
+
+    void hide() {
+        if (isShowing) {
+            windowManager.removeView(targetView);
+            isShowing = false;
+            hitRect.setEmpty();
+        }
+    }
+
+    boolean isShowing() {
+        return isShowing;
+    }
+
+    /** Test a raw screen position against our precomputed hit rect. */
+    boolean hitTest(float rawX, float rawY) {
+        return isShowing && hitRect.contains((int) rawX, (int) rawY);
+    }
+
+    /** Center of the target in screen coordinates, valid once a hit test has succeeded. */
+    int getCenterX() {
+        return centerX;
+    }
+
+    int getCenterY() {
+        return centerY;
+    }
+
+    /** Grow the target while a floating view is held over it. */
+    void setHighlighted(boolean highlighted) {
+        if (targetView != null && isHighlighted != highlighted) {
+            isHighlighted = highlighted;
+            float scale = highlighted ? HIGHLIGHT_SCALE : 1f;
+            targetView.setScaleX(scale);
+            targetView.setScaleY(scale);
+        }
+    }
+
+    private void inflate() {
+        targetView = LayoutInflater.from(context).inflate(R.layout.floating_dismiss_target, null);
+        targetView.addOnLayoutChangeListener(layoutChangeListener);
+
+        // LayoutParams has changed the OVERLAY flag starting with Oreo.
+        int LAYOUT_FLAG;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            LAYOUT_FLAG = WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY;
+        } else {
+            LAYOUT_FLAG = WindowManager.LayoutParams.TYPE_PHONE;
+        }
+
+        targetLayoutParams = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                LAYOUT_FLAG,
+                // We are only a visual target, touches go to the floating view being dragged.
+                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
+                        | WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE,
+                PixelFormat.TRANSLUCENT);
+        targetLayoutParams.gravity = Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL;
+        targetLayoutParams.y = context.getResources()
+                .getDimensionPixelSize(R.dimen.dismiss_target_margin);
+    }
+
+    /** Precompute our hit rect whenever we are laid out, never while dragging. */
+    private final View.OnLayoutChangeListener layoutChangeListener =
+            new View.OnLayoutChangeListener() {
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                   int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            v.getLocationOnScreen(location);
+            int width = right - left;
+            int height = bottom - top;
+            centerX = location[0] + width / 2;
+            centerY = location[1] + height / 2;
+            hitRect.set(location[0] - magnetRadius, location[1] - magnetRadius,
+                    location[0] + width + magnetRadius, location[1] + height + magnetRadius);
+        }
+    };
+}
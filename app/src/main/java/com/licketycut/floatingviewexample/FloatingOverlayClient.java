@@ -0,0 +1,259 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.support.v4.content.LocalBroadcastManager;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * Client for floating views hosted in the :overlay process by {@link FloatingOverlayHostService}.
+ * Commands are queued and sent as a single batched transaction once per frame,
+ * repeated moves and content updates of the same floating view within a batch are merged.
+ * Clicks sent back by the host are rebroadcast with a local broadcast manager,
+ * so receivers work the same as with an in process {@link FloatingViewService}.
+ * Must only be used from the main thread.
+ */
+public class FloatingOverlayClient {
+    private static final String TAG = "FloatingOverlayClient";
+
+    private final Context context;
+    private Messenger host;
+    private boolean bound = false;
+
+    // Commands waiting to be sent in our next transaction.
+    private final ArrayList<Bundle> pendingCommands = new ArrayList<>();
+    private boolean flushScheduled = false;
+    // Our ids are only unique to us, the host maps them to ids of its own.
+    private int nextId = 0;
+
+    // IPC counters.
+    private long numCommands = 0;
+    private long numMergedCommands = 0;
+    private long numTransactions = 0;
+    private long numEventsReceived = 0;
+
+    public FloatingOverlayClient(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /** Start and bind to the overlay host service. */
+    public void bind() {
+        if (!bound) {
+            Intent intent = new Intent(context, FloatingOverlayHostService.class);
+            intent.setAction(FloatingOverlayHostService.ACTION_BIND_REMOTE);
+            bound = context.bindService(intent, connection, Context.BIND_AUTO_CREATE);
+        }
+    }
+
+    public void unbind() {
+        if (bound) {
+            flush();
+            context.unbindService(connection);
+            bound = false;
+            host = null;
+        }
+    }
+
+    /** Begin commands, each returns the id of the floating view it applies to. */
+    public int attachButton(String buttonText, String onClickAction, String onExitAction) {
+        Bundle command = newCommand(FloatingOverlayHostService.CMD_ATTACH_BUTTON, nextId++);
+        command.putString(FloatingOverlayHostService.KEY_TEXT, buttonText);
+        command.putString(FloatingOverlayHostService.KEY_CLICK_ACTION, onClickAction);
+        command.putString(FloatingOverlayHostService.KEY_EXIT_ACTION, onExitAction);
+        return enqueue(command);
+    }
+
+    public int attachInfo(String title, String text) {
+        Bundle command = newCommand(FloatingOverlayHostService.CMD_ATTACH_INFO, nextId++);
+        command.putString(FloatingOverlayHostService.KEY_TITLE, title);
+        command.putString(FloatingOverlayHostService.KEY_TEXT, text);
+        return enqueue(command);
+    }
+
+    public int updateContent(int id, String title, String text) {
+        Bundle command = newCommand(FloatingOverlayHostService.CMD_UPDATE_CONTENT, id);
+        command.putString(FloatingOverlayHostService.KEY_TITLE, title);
+        command.putString(FloatingOverlayHostService.KEY_TEXT, text);
+        return enqueue(command);
+    }
+
+    public int move(int id, int x, int y) {
+        Bundle command = newCommand(FloatingOverlayHostService.CMD_MOVE, id);
+        command.putInt(FloatingOverlayHostService.KEY_X, x);
+        command.putInt(FloatingOverlayHostService.KEY_Y, y);
+        return enqueue(command);
+    }
+
+    public int detach(int id) {
+        return enqueue(newCommand(FloatingOverlayHostService.CMD_DETACH, id));
+    }
+
+    public void detachAll() {
+        enqueue(newCommand(FloatingOverlayHostService.CMD_DETACH_ALL, -1));
+    }
+    /* End commands. */
+
+    public long getNumCommands() {
+        return numCommands;
+    }
+
+    public long getNumMergedCommands() {
+        return numMergedCommands;
+    }
+
+    public long getNumTransactions() {
+        return numTransactions;
+    }
+
+    public long getNumEventsReceived() {
+        return numEventsReceived;
+    }
+
+    private Bundle newCommand(int command, int id) {
+        Bundle bundle = new Bundle();
+        bundle.putInt(FloatingOverlayHostService.KEY_COMMAND, command);
+        bundle.putInt(FloatingOverlayHostService.KEY_ID, id);
+        return bundle;
+    }
+
+    /** Queue a command, replacing an earlier move or update of the same floating view. */
+    private int enqueue(Bundle command) {
+        numCommands++;
+        int type = command.getInt(FloatingOverlayHostService.KEY_COMMAND);
+        int id = command.getInt(FloatingOverlayHostService.KEY_ID);
+        boolean merged = false;
+        if (type == FloatingOverlayHostService.CMD_MOVE
+                || type == FloatingOverlayHostService.CMD_UPDATE_CONTENT) {
+            for (int i = pendingCommands.size() - 1; i >= 0; i--) {
+                Bundle pending = pendingCommands.get(i);
+                if (pending.getInt(FloatingOverlayHostService.KEY_COMMAND)
+                        == FloatingOverlayHostService.CMD_DETACH_ALL) {
+                    break;
+                }
+                if (pending.getInt(FloatingOverlayHostService.KEY_ID) != id) {
+                    continue;
+                }
+                if (pending.getInt(FloatingOverlayHostService.KEY_COMMAND) == type) {
+                    if (type == FloatingOverlayHostService.CMD_UPDATE_CONTENT) {
+                        // Keep any field the newer update leaves unchanged.
+                        keepPendingString(pending, command, FloatingOverlayHostService.KEY_TITLE);
+                        keepPendingString(pending, command, FloatingOverlayHostService.KEY_TEXT);
+                    }
+                    pendingCommands.set(i, command);
+                    numMergedCommands++;
+                    merged = true;
+                }
+                // Never merge past another command for the same floating view.
+                break;
+            }
+        }
+        if (!merged) {
+            pendingCommands.add(command);
+        }
+
+        if (!flushScheduled) {
+            flushScheduled = true;
+            Choreographer.getInstance().postFrameCallback(flushFrameCallback);
+        }
+        return id;
+    }
+
+    private void keepPendingString(Bundle pending, Bundle command, String key) {
+        if (command.getString(key) == null) {
+            command.putString(key, pending.getString(key));
+        }
+    }
+
+    private final Choreographer.FrameCallback flushFrameCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            flushScheduled = false;
+            flush();
+        }
+    };
+
+    /** Send all pending commands in a single transaction, if we are connected. */
+    public void flush() {
+        if (host == null || pendingCommands.isEmpty()) {
+            // We will flush once connected.
+            return;
+        }
+
+        Message msg = Message.obtain(null, FloatingOverlayHostService.MSG_COMMANDS);
+        Bundle data = new Bundle();
+        data.putParcelableArrayList(FloatingOverlayHostService.KEY_COMMANDS,
+                new ArrayList<>(pendingCommands));
+        msg.setData(data);
+        msg.replyTo = replyMessenger;
+        try {
+            host.send(msg);
+            numTransactions++;
+            pendingCommands.clear();
+        } catch (RemoteException e) {
+            Log.w(TAG, "Overlay host has gone away : " + e.getMessage());
+            host = null;
+        }
+    }
+
+    /** Receive clicks from the overlay host and rebroadcast them locally. */
+    private final Messenger replyMessenger = new Messenger(new Handler(Looper.getMainLooper(),
+            new Handler.Callback() {
+                @Override
+                public boolean handleMessage(Message msg) {
+                    if (msg.what == FloatingOverlayHostService.MSG_EVENT) {
+                        numEventsReceived++;
+                        String action = msg.getData()
+                                .getString(FloatingOverlayHostService.KEY_ACTION);
+                        if (action != null) {
+                            LocalBroadcastManager.getInstance(context)
+                                    .sendBroadcast(new Intent(action));
+                        }
+                        return true;
+                    }
+                    return false;
+                }
+            }));
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            host = new Messenger(service);
+            // Send anything queued while we were connecting.
+            flush();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            host = null;
+        }
+    };
+}
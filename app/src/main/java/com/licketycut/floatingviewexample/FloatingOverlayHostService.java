@@ -0,0 +1,272 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import com.licketycut.floatingviewexample.floatingviews.FloatingButtonView;
+import com.licketycut.floatingviewexample.floatingviews.FloatingInfoView;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * {@link FloatingViewService} which runs in its own lightweight :overlay process,
+ * so floating views don't keep the main activity's process alive.
+ * Clients use {@link FloatingOverlayClient} which sends commands in batches,
+ * one {@link Messenger} transaction per frame, and clicks are sent back the same way.
+ */
+public class FloatingOverlayHostService extends FloatingViewService {
+    private final static String TAG = "FloatingOverlayHost";
+
+    // Bind with this action to get our messenger rather than the local binder.
+    public final static String ACTION_BIND_REMOTE = TAG + ".bindRemote";
+
+    // Message types.
+    static final int MSG_COMMANDS = 1;
+    static final int MSG_EVENT = 2;
+
+    // Commands which can be batched in a MSG_COMMANDS message.
+    static final int CMD_ATTACH_BUTTON = 1;
+    static final int CMD_ATTACH_INFO = 2;
+    static final int CMD_UPDATE_CONTENT = 3;
+    static final int CMD_MOVE = 4;
+    static final int CMD_DETACH = 5;
+    static final int CMD_DETACH_ALL = 6;
+
+    // Bundle keys.
+    static final String KEY_COMMANDS = "commands";
+    static final String KEY_COMMAND = "command";
+    static final String KEY_ID = "id";
+    static final String KEY_TITLE = "title";
+    static final String KEY_TEXT = "text";
+    static final String KEY_CLICK_ACTION = "clickAction";
+    static final String KEY_EXIT_ACTION = "exitAction";
+    static final String KEY_X = "x";
+    static final String KEY_Y = "y";
+    static final String KEY_ACTION = "action";
+
+    // Floating views we host, keyed by an id we assign.
+    private final SparseArray<FloatingView> hostedViews = new SparseArray<>();
+    // Each client's own ids mapped to ours, keyed by the client's reply messenger.
+    // A recreated client starts its ids from zero again, so they are only unique per client.
+    private final HashMap<IBinder, SparseIntArray> clientIds = new HashMap<>();
+    private int nextHostedId = 0;
+    // Messenger of the client which last sent us commands, used to send back clicks.
+    private Messenger client;
+
+    // IPC counters.
+    private long numTransactions = 0;
+    private long numCommands = 0;
+    private long numEventsSent = 0;
+
+    private final Messenger messenger = new Messenger(new Handler(Looper.getMainLooper(),
+            new Handler.Callback() {
+                @Override
+                public boolean handleMessage(Message msg) {
+                    if (msg.what == MSG_COMMANDS) {
+                        numTransactions++;
+                        if (msg.replyTo != null) {
+                            client = msg.replyTo;
+                        }
+                        IBinder clientKey = msg.replyTo != null ? msg.replyTo.getBinder() : null;
+                        Bundle data = msg.getData();
+                        data.setClassLoader(Bundle.class.getClassLoader());
+                        ArrayList<Bundle> commands = data.getParcelableArrayList(KEY_COMMANDS);
+                        if (commands != null) {
+                            for (Bundle command : commands) {
+                                applyCommand(command, clientKey);
+                            }
+                        }
+                        return true;
+                    }
+                    return false;
+                }
+            }));
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        if (ACTION_BIND_REMOTE.equals(intent.getAction())) {
+            return messenger.getBinder();
+        }
+        return super.onBind(intent);
+    }
+
+    private void applyCommand(Bundle command, IBinder clientKey) {
+        numCommands++;
+        Context context = getApplicationContext();
+        int clientId = command.getInt(KEY_ID);
+        FloatingView floatingView = getHostedView(clientKey, clientId);
+
+        switch (command.getInt(KEY_COMMAND)) {
+            case CMD_ATTACH_BUTTON:
+                // Floating views we create in this process must bind to us.
+                floatingView = new FloatingButtonView(context, FloatingOverlayHostService.class,
+                        command.getString(KEY_TEXT), command.getString(KEY_CLICK_ACTION),
+                        command.getString(KEY_EXIT_ACTION));
+                hostFloatingView(clientKey, clientId, floatingView);
+                floatingView.attachToWindow(context, true);
+                break;
+            case CMD_ATTACH_INFO:
+                floatingView = new FloatingInfoView(context, FloatingOverlayHostService.class,
+                        command.getString(KEY_TITLE), command.getString(KEY_TEXT), false);
+                hostFloatingView(clientKey, clientId, floatingView);
+                floatingView.attachToWindow(context, true);
+                break;
+            case CMD_UPDATE_CONTENT:
+                if (floatingView instanceof FloatingInfoView) {
+                    ((FloatingInfoView) floatingView).updateContent(
+                            command.getString(KEY_TITLE), command.getString(KEY_TEXT));
+                }
+                break;
+            case CMD_MOVE:
+                if (floatingView != null) {
+                    floatingView.setLayoutPosition(command.getInt(KEY_X), command.getInt(KEY_Y));
+                }
+                break;
+            case CMD_DETACH:
+                if (floatingView != null) {
+                    floatingView.detachFromWindow(false);
+                    // We may not have been attached yet, so make sure we are forgotten.
+                    unhostFloatingView(floatingView);
+                }
+                break;
+            case CMD_DETACH_ALL:
+                detachAllFloatingViews();
+                // Floating views which hadn't attached yet are still hosted, forget them too.
+                while (hostedViews.size() > 0) {
+                    unhostFloatingView(hostedViews.valueAt(0));
+                }
+                break;
+            default:
+                Log.w(TAG, "Unknown command " + command.getInt(KEY_COMMAND));
+        }
+    }
+
+    /** Begin methods to map each client's ids to the floating views we host for it. */
+    private FloatingView getHostedView(IBinder clientKey, int clientId) {
+        SparseIntArray ids = clientIds.get(clientKey);
+        int id = ids != null ? ids.get(clientId, -1) : -1;
+        return id >= 0 ? hostedViews.get(id) : null;
+    }
+
+    private void hostFloatingView(IBinder clientKey, int clientId, FloatingView floatingView) {
+        FloatingView previous = getHostedView(clientKey, clientId);
+        if (previous != null) {
+            // The client has reused an id, don't leave its old floating view orphaned.
+            previous.detachFromWindow(false);
+            unhostFloatingView(previous);
+        }
+        SparseIntArray ids = clientIds.get(clientKey);
+        if (ids == null) {
+            ids = new SparseIntArray();
+            clientIds.put(clientKey, ids);
+        }
+        int id = nextHostedId++;
+        ids.put(clientId, id);
+        hostedViews.put(id, floatingView);
+    }
+
+    /** Forget a floating view and unbind it from us, since nothing else owns it. */
+    private void unhostFloatingView(FloatingView floatingView) {
+        int index = hostedViews.indexOfValue(floatingView);
+        if (index < 0) {
+            return;
+        }
+        int id = hostedViews.keyAt(index);
+        hostedViews.removeAt(index);
+        Iterator<SparseIntArray> iterator = clientIds.values().iterator();
+        while (iterator.hasNext()) {
+            SparseIntArray ids = iterator.next();
+            int idIndex = ids.indexOfValue(id);
+            if (idIndex >= 0) {
+                ids.removeAt(idIndex);
+                if (ids.size() == 0) {
+                    iterator.remove();
+                }
+                break;
+            }
+        }
+        floatingView.unbindFloatingViewService();
+    }
+
+    int getNumHostedViews() {
+        return hostedViews.size();
+    }
+    /* End methods to map each client's ids. */
+
+    /** Floating views also detach themselves when swiped, dismissed or evicted. */
+    @Override
+    protected void onFloatingViewRemoved(FloatingView floatingView) {
+        super.onFloatingViewRemoved(floatingView);
+        unhostFloatingView(floatingView);
+    }
+
+    /** Our clients are in another process, so send actions back to them with our messenger. */
+    @Override
+    protected void broadcastAction(String action) {
+        super.broadcastAction(action);
+        if (client != null) {
+            Message msg = Message.obtain(null, MSG_EVENT);
+            Bundle data = new Bundle();
+            data.putString(KEY_ACTION, action);
+            msg.setData(data);
+            try {
+                client.send(msg);
+                numEventsSent++;
+            } catch (RemoteException e) {
+                // Our client has gone away.
+                client = null;
+            }
+        }
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        super.dump(fd, pw, args);
+        pw.println("  IPC: transactions=" + numTransactions + " commands=" + numCommands
+                + " eventsSent=" + numEventsSent + " hostedViews=" + hostedViews.size()
+                + " clients=" + clientIds.size()
+                + " clientConnected=" + (client != null));
+    }
+
+    long getNumTransactions() {
+        return numTransactions;
+    }
+
+    long getNumCommands() {
+        return numCommands;
+    }
+
+    long getNumEventsSent() {
+        return numEventsSent;
+    }
+}
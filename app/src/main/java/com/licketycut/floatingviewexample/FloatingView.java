@@ -17,20 +17,41 @@
 package com.licketycut.floatingviewexample;
 
 import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
+import android.graphics.Bitmap;
 import android.graphics.PixelFormat;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.provider.Settings;
+import android.support.v4.content.LocalBroadcastManager;
+import android.support.v4.os.TraceCompat;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 import android.view.WindowManager;
+import android.widget.ImageView;
+
+import com.licketycut.floatingviewexample.utils.LatencyHistogram;
+import com.licketycut.floatingviewexample.utils.TimerWheel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static android.content.Context.WINDOW_SERVICE;
 
@@ -40,18 +61,115 @@ public abstract class FloatingView {
 
     private final FloatingView instance =this;
 
-    private FloatingViewService floatingViewService;
-    private boolean floatingViewBound = false;
+    // Unique id used to identify our record in the floating view service snapshot.
+    private static final AtomicInteger nextFloatingViewId = new AtomicInteger(0);
+    private final int floatingViewId = nextFloatingViewId.incrementAndGet();
+    private final int layoutId;
+
+    // Lifecycle states, every transition is made with compareAndSet
+    // so attaching and detaching never block on a monitor.
+    // Created but not bound to the floating view service.
+    static final int STATE_CREATED = 0;
+    // Waiting for the floating view service to connect.
+    static final int STATE_BINDING = 1;
+    // Bound to the floating view service and ready to attach.
+    static final int STATE_READY = 2;
+    static final int STATE_ATTACHED = 3;
+    // Bound but removed from the window manager, ready to attach again.
+    static final int STATE_DETACHED = 4;
+    private final AtomicInteger state = new AtomicInteger(STATE_CREATED);
 
-    // Switch to turn on the foreground notification when floating view is bound.
-    private boolean startForeground = false;
+    // Operations requested before the service connected, applied exactly once when it does.
+    private static final int PENDING_ATTACH = 0x01;
+    private static final int PENDING_FOREGROUND = 0x10;
+    private final AtomicInteger pendingOps = new AtomicInteger(0);
+    private volatile Context pendingAttachContext;
+
+    // The floating view service class we bind to, which must run in our own process.
+    private final Class<? extends FloatingViewService> floatingViewServiceClass;
+
+    private volatile FloatingViewService floatingViewService;
+    private volatile boolean floatingViewBound = false;
+    // Whether our service receiver is registered, and how many are across all floating views.
+    private boolean receiverRegistered = false;
+    private static int numRegisteredReceivers = 0;
+    // Number of times floating views have bound to and unbound from the service.
+    private static final AtomicInteger numBinds = new AtomicInteger(0);
+    private static final AtomicInteger numUnbinds = new AtomicInteger(0);
 
     private final WindowManager windowManager;
     private final WindowManager.LayoutParams floatingLayoutParams;
+    // Cached bounds we are clamped to while being dragged, shared by all floating views.
+    private final FloatingViewDisplayBounds displayBounds;
 
     // The parent view that we will be working with.
     private final View rootView;
-    private boolean isAttached = false;
+
+    // Last time the user interacted with this floating view, used for LRU eviction.
+    private long lastInteractionTime = SystemClock.elapsedRealtime();
+    // Whether we have been collapsed to a minimal placeholder by the floating view service.
+    private boolean isCollapsed = false;
+    // Bytes we pin once collapsed, fixed when we collapse.
+    private long collapsedBytes;
+
+    private long numWindowUpdates = 0;
+
+    // Latencies of window manager calls made by all floating views, for diagnostics.
+    private static final LatencyHistogram attachLatency = new LatencyHistogram();
+    private static final LatencyHistogram windowUpdateLatency = new LatencyHistogram();
+    // Time from asking to be visible until our next frame, by attaching or by showing.
+    private static final LatencyHistogram attachToFrameLatency = new LatencyHistogram();
+    private static final LatencyHistogram showToFrameLatency = new LatencyHistogram();
+
+    // Whether we are attached but hidden, and when we last asked to become visible.
+    private boolean isHidden = false;
+    private long visibleRequestedNanos;
+    private boolean visibleFromShow;
+    private boolean visibleFramePosted = false;
+
+    // When the floating view service began restoring us from its snapshot, zero if it didn't.
+    private long restoreStartNanos = 0;
+
+    // Encoding of the strings we write to snapshots.
+    private static final Charset SNAPSHOT_CHARSET = Charset.forName("UTF-8");
+
+    // Rough cost of a view object and its layout state, for our retained size estimate.
+    private static final long VIEW_OVERHEAD_BYTES = 512;
+
+    // System trace section names, constant so tracing never allocates.
+    private static final String TRACE_INFLATE = "FloatingView.inflate";
+    private static final String TRACE_BIND = "FloatingView.bindService";
+    private static final String TRACE_SERVICE_CONNECTED = "FloatingView.onServiceConnected";
+    private static final String TRACE_ATTACH = "FloatingView.attachToWindow";
+    private static final String TRACE_DETACH = "FloatingView.detachFromWindow";
+    private static final String TRACE_UPDATE_LAYOUT = "FloatingView.updateLayoutParams";
+
+    // Our position as fractions of the distance we can travel across the display,
+    // used to put us back in the same place when the display changes. NaN if we can't travel.
+    private float normalizedX = Float.NaN;
+    private float normalizedY = Float.NaN;
+
+    // Whether the animator has changed our window position this frame.
+    private boolean animatedLayoutChanged = false;
+
+    // Idle policy flags, what we do once nobody has touched us for our idle delay.
+    public static final int IDLE_DIM = 0x01;
+    public static final int IDLE_SHRINK = 0x10;
+    public static final int IDLE_DOCK = 0x100;
+    private static final float IDLE_ALPHA = 0.4f;
+    private static final float IDLE_SCALE = 0.6f;
+    private static final long IDLE_ANIMATION_MS = 300;
+
+    // Idle policy, disabled unless a delay and flags have been set.
+    private long idleDelayMs = 0;
+    private int idlePolicy = 0;
+    private boolean isIdle = false;
+    private int previousLayerType = View.LAYER_TYPE_NONE;
+    // Time spent idle and active while attached, the current period began at idlePeriodStart.
+    private long idlePeriodStart;
+    private long totalIdleMs = 0;
+    private long totalActiveMs = 0;
+    private int numIdlePeriods = 0;
 
     /**
      * Create the floating view.
@@ -59,10 +177,30 @@ public abstract class FloatingView {
      * @param context Context which we will attach to.
      */
     protected FloatingView(Context context, int layoutId) {
+        this(context, layoutId, FloatingViewService.class);
+    }
+
+    /**
+     * Create the floating view bound to a floating view service subclass,
+     * which must run in the same process as we do.
+     *
+     * @param context       Context which we will attach to.
+     * @param serviceClass  Floating view service to bind to.
+     */
+    protected FloatingView(Context context, int layoutId,
+                           Class<? extends FloatingViewService> serviceClass) {
 
         // Inflate the floating view resource which has been sent by the subclass.
-        rootView = LayoutInflater.from(context).inflate(layoutId, null);
+        this.layoutId = layoutId;
+        floatingViewServiceClass = serviceClass;
+        TraceCompat.beginSection(TRACE_INFLATE);
+        try {
+            rootView = LayoutInflater.from(context).inflate(layoutId, null);
+        } finally {
+            TraceCompat.endSection();
+        }
         windowManager = (WindowManager) context.getSystemService(WINDOW_SERVICE);
+        displayBounds = FloatingViewDisplayBounds.getInstance(context);
 
         // LayoutParams has changed the OVERLAY flag starting with Oreo.
         int LAYOUT_FLAG;
@@ -105,11 +243,21 @@ public abstract class FloatingView {
 
     protected void setLayoutWidth(int width) {
         getFloatingLayoutParams().width = width;
+        updateNormalizedPosition();
         updateLayoutParams();
     }
 
     protected void setLayoutHeight(int height) {
         getFloatingLayoutParams().height = height;
+        updateNormalizedPosition();
+        updateLayoutParams();
+    }
+
+    /** Set both width and height with a single window update. */
+    protected void setLayoutSize(int width, int height) {
+        getFloatingLayoutParams().width = width;
+        getFloatingLayoutParams().height = height;
+        updateNormalizedPosition();
         updateLayoutParams();
     }
 
@@ -119,6 +267,7 @@ public abstract class FloatingView {
 
     protected void setLayoutX(int x){
         getFloatingLayoutParams().x = x;
+        updateNormalizedPosition();
         updateLayoutParams();
     }
 
@@ -128,6 +277,15 @@ public abstract class FloatingView {
 
     protected void setLayoutY(int y){
         getFloatingLayoutParams().y = y;
+        updateNormalizedPosition();
+        updateLayoutParams();
+    }
+
+    /** Set both x and y with a single window update. */
+    protected void setLayoutPosition(int x, int y){
+        getFloatingLayoutParams().x = x;
+        getFloatingLayoutParams().y = y;
+        updateNormalizedPosition();
         updateLayoutParams();
     }
 
@@ -137,6 +295,7 @@ public abstract class FloatingView {
 
     protected void setLayoutGravity(int gravity) {
         floatingLayoutParams.gravity = gravity;
+        updateNormalizedPosition();
         updateLayoutParams();
     }
 
@@ -147,56 +306,675 @@ public abstract class FloatingView {
     private void updateLayoutParams(){
         if(getFloatingLayoutParams() !=null) {
             if (windowManager != null) {
-                if (isAttached) {
+                if (isAttached()) {
+                    TraceCompat.beginSection(TRACE_UPDATE_LAYOUT);
+                    long start = System.nanoTime();
                     windowManager.updateViewLayout(getRootView(), getFloatingLayoutParams());
+                    windowUpdateLatency.record(System.nanoTime() - start);
+                    TraceCompat.endSection();
+                    numWindowUpdates++;
                 }
             }
         }
     }
     /* End methods used to modify and update floating view layout params. */
 
+    /**
+     * Begin methods used by the touch listener to keep us within the display,
+     * unless we have been allowed off screen.
+     */
+    int clampLayoutX(int x) {
+        if (isAllowedOffScreen()) {
+            return x;
+        }
+        return displayBounds.clampX(x, rootView.getWidth(), floatingLayoutParams.gravity);
+    }
+
+    int clampLayoutY(int y) {
+        if (isAllowedOffScreen()) {
+            return y;
+        }
+        return displayBounds.clampY(y, rootView.getHeight(), floatingLayoutParams.gravity);
+    }
+
+    private boolean isAllowedOffScreen() {
+        return (floatingLayoutParams.flags & WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS)
+                == WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS;
+    }
+    /* End methods used by the touch listener to keep us within the display. */
+
+    /** Begin methods used to keep our position when the display changes. */
+    private void updateNormalizedPosition() {
+        normalizedX = displayBounds.normalizeX(floatingLayoutParams.x, rootView.getWidth(),
+                floatingLayoutParams.gravity);
+        normalizedY = displayBounds.normalizeY(floatingLayoutParams.y, rootView.getHeight(),
+                floatingLayoutParams.gravity);
+    }
+
+    /**
+     * Called by the floating view service once the display has changed,
+     * move to the same relative position within the new display bounds.
+     *
+     * @return  True if we moved, costing a single window update.
+     */
+    boolean reflowPosition() {
+        if (!isAttached()) {
+            return false;
+        }
+        int x = floatingLayoutParams.x;
+        int y = floatingLayoutParams.y;
+        if (!Float.isNaN(normalizedX)) {
+            x = displayBounds.denormalizeX(normalizedX, rootView.getWidth(),
+                    floatingLayoutParams.gravity);
+        }
+        if (!Float.isNaN(normalizedY)) {
+            y = displayBounds.denormalizeY(normalizedY, rootView.getHeight(),
+                    floatingLayoutParams.gravity);
+        }
+        if (x == floatingLayoutParams.x && y == floatingLayoutParams.y) {
+            return false;
+        }
+        // Keep our normalized position rather than recomputing it, so rounding never drifts.
+        floatingLayoutParams.x = x;
+        floatingLayoutParams.y = y;
+        updateLayoutParams();
+        return true;
+    }
+    /* End methods used to keep our position when the display changes. */
+
+    /** Begin methods used by the {@link FloatingViewAnimator} to batch window updates. */
+    void setAnimatedLayoutX(int x) {
+        if (floatingLayoutParams.x != x) {
+            floatingLayoutParams.x = x;
+            animatedLayoutChanged = true;
+        }
+    }
+
+    void setAnimatedLayoutY(int y) {
+        if (floatingLayoutParams.y != y) {
+            floatingLayoutParams.y = y;
+            animatedLayoutChanged = true;
+        }
+    }
+
+    /** Our window size, our root view's size if we are wrapping our content. */
+    int getAnimatedLayoutWidth() {
+        return floatingLayoutParams.width >= 0 ? floatingLayoutParams.width : rootView.getWidth();
+    }
+
+    int getAnimatedLayoutHeight() {
+        return floatingLayoutParams.height >= 0
+                ? floatingLayoutParams.height : rootView.getHeight();
+    }
+
+    void setAnimatedLayoutWidth(int width) {
+        if (floatingLayoutParams.width != width) {
+            floatingLayoutParams.width = width;
+            animatedLayoutChanged = true;
+        }
+    }
+
+    void setAnimatedLayoutHeight(int height) {
+        if (floatingLayoutParams.height != height) {
+            floatingLayoutParams.height = height;
+            animatedLayoutChanged = true;
+        }
+    }
+
+    /** @return True if our window position or size changed this frame and has been updated. */
+    boolean commitAnimatedLayout() {
+        if (!animatedLayoutChanged) {
+            return false;
+        }
+        animatedLayoutChanged = false;
+        updateNormalizedPosition();
+        updateLayoutParams();
+        return true;
+    }
+    /* End methods used by the animator to batch window updates. */
+
+    /** Number of times we have updated our window layout while attached. */
+    protected long getNumWindowUpdates() {
+        return numWindowUpdates;
+    }
+
+    /** Begin methods used by the floating view service to dump diagnostics. */
+    static int getNumRegisteredReceivers() {
+        return numRegisteredReceivers;
+    }
+
+    static int getNumBinds() {
+        return numBinds.get();
+    }
+
+    static int getNumUnbinds() {
+        return numUnbinds.get();
+    }
+
+    static LatencyHistogram getAttachLatency() {
+        return attachLatency;
+    }
+
+    static LatencyHistogram getWindowUpdateLatency() {
+        return windowUpdateLatency;
+    }
+
+    static LatencyHistogram getAttachToFrameLatency() {
+        return attachToFrameLatency;
+    }
+
+    static LatencyHistogram getShowToFrameLatency() {
+        return showToFrameLatency;
+    }
+
+    /** Print a one line summary of our state, only reads fields we already maintain. */
+    void dump(PrintWriter pw, String prefix) {
+        pw.print(prefix);
+        pw.print("#");
+        pw.print(floatingViewId);
+        pw.print(" ");
+        pw.print(getClass().getSimpleName());
+        pw.print(" state=");
+        pw.print(state.get());
+        pw.print(" pos=");
+        pw.print(floatingLayoutParams.x);
+        pw.print(",");
+        pw.print(floatingLayoutParams.y);
+        pw.print(" size=");
+        pw.print(rootView.getWidth());
+        pw.print("x");
+        pw.print(rootView.getHeight());
+        pw.print(" gravity=0x");
+        pw.print(Integer.toHexString(floatingLayoutParams.gravity));
+        pw.print(" flags=0x");
+        pw.print(Integer.toHexString(floatingLayoutParams.flags));
+        pw.print(" bound=");
+        pw.print(floatingViewBound);
+        pw.print(" collapsed=");
+        pw.print(isCollapsed);
+        pw.print(" idle=");
+        pw.print(isIdle);
+        pw.print(" hidden=");
+        pw.print(isHidden);
+        pw.print(" windowUpdates=");
+        pw.print(numWindowUpdates);
+        pw.print(" estimatedBytes=");
+        pw.print(getEstimatedBytes());
+        pw.print(" retainedBytes=");
+        pw.print(getRetainedBytesEstimate());
+        pw.print(" idleMs=");
+        pw.print(getIdleTimeMs());
+        pw.print(" activeMs=");
+        pw.println(getActiveTimeMs());
+    }
+
+    /**
+     * Roughly estimate the bytes we keep alive: our view hierarchy, the bitmaps it draws
+     * and our window surface while attached. Walks our hierarchy, so only used by dump.
+     */
+    long getRetainedBytesEstimate() {
+        long bytes = estimateViewBytes(rootView);
+        if (isAttached()) {
+            bytes += getEstimatedBytes();
+        }
+        return bytes;
+    }
+
+    private static long estimateViewBytes(View view) {
+        long bytes = VIEW_OVERHEAD_BYTES + estimateDrawableBytes(view.getBackground());
+        if (view instanceof ImageView) {
+            bytes += estimateDrawableBytes(((ImageView) view).getDrawable());
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup viewGroup = (ViewGroup) view;
+            for (int i = 0; i < viewGroup.getChildCount(); i++) {
+                bytes += estimateViewBytes(viewGroup.getChildAt(i));
+            }
+        }
+        return bytes;
+    }
+
+    private static long estimateDrawableBytes(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            return bitmap != null ? bitmap.getByteCount() : 0;
+        }
+        return 0;
+    }
+    /* End methods used by the floating view service to dump diagnostics. */
+
+    /** Begin methods used by the floating view service to snapshot and restore us. */
+    int getFloatingViewId() {
+        return floatingViewId;
+    }
+
+    /** Write our layout id, window layout and normalized position to the snapshot. */
+    void writeSnapshotLayout(DataOutputStream out) throws IOException {
+        out.writeInt(layoutId);
+        out.writeInt(floatingLayoutParams.x);
+        out.writeInt(floatingLayoutParams.y);
+        out.writeInt(floatingLayoutParams.width);
+        out.writeInt(floatingLayoutParams.height);
+        out.writeInt(floatingLayoutParams.gravity);
+        out.writeFloat(normalizedX);
+        out.writeFloat(normalizedY);
+    }
+
+    /** When the floating view service began restoring us, zero once we have been attached. */
+    long getRestoreStartNanos() {
+        return restoreStartNanos;
+    }
+
+    void setRestoreStartNanos(long nanos) {
+        restoreStartNanos = nanos;
+    }
+
+    /**
+     * Restore our window layout from the snapshot before we are attached.
+     * We haven't been laid out yet, so we take the normalized position we saved
+     * rather than computing it from our size.
+     */
+    void restoreSnapshotLayout(int x, int y, int width, int height, int gravity,
+                               float normalizedX, float normalizedY) {
+        floatingLayoutParams.x = x;
+        floatingLayoutParams.y = y;
+        floatingLayoutParams.width = width;
+        floatingLayoutParams.height = height;
+        floatingLayoutParams.gravity = gravity;
+        this.normalizedX = normalizedX;
+        this.normalizedY = normalizedY;
+        updateLayoutParams();
+        onLayoutSizeRestored(width, height);
+    }
+
+    /**
+     * Subclasses which size their content to a resized window override this,
+     * our size may be a layout params constant such as WRAP_CONTENT.
+     */
+    protected void onLayoutSizeRestored(int width, int height) { }
+
+    /**
+     * Subclasses which can be restored after the floating view service is restarted
+     * return a type registered with a {@link SnapshotRestorer}, by default we aren't restored.
+     */
+    protected String getSnapshotType() { return null; }
+
+    /** Subclasses write whatever content their {@link SnapshotRestorer} needs. */
+    protected void writeSnapshotContent(DataOutputStream out) throws IOException { }
+
+    /**
+     * Write a string to a snapshot as a length prefixed UTF-8 byte array,
+     * unlike {@link DataOutputStream#writeUTF} user text isn't limited to 64KB.
+     */
+    protected static void writeSnapshotString(DataOutputStream out, CharSequence value)
+            throws IOException {
+        byte[] bytes = (value != null ? value.toString() : "").getBytes(SNAPSHOT_CHARSET);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Read a string written by {@link #writeSnapshotString}. */
+    protected static String readSnapshotString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid snapshot string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, SNAPSHOT_CHARSET);
+    }
+
+    /** Let the floating view service know our position, size or content has changed. */
+    protected void notifySnapshotChanged() {
+        FloatingViewService service = floatingViewService;
+        if (service != null && isAttached()) {
+            service.onFloatingViewChanged(this);
+        }
+    }
+
+    /** Rebuilds a floating view from the content written by {@link #writeSnapshotContent}. */
+    public interface SnapshotRestorer {
+
+        FloatingView restore(Context context, Class<? extends FloatingViewService> serviceClass,
+                             int layoutId, DataInputStream in) throws IOException;
+    }
+    /* End methods used by the floating view service to snapshot and restore us. */
+
     /** Begin methods to make root view and attached status available to the subclass. */
     protected View getRootView() {
         return rootView;
     }
 
     protected boolean isAttached() {
-        return isAttached;
+        return state.get() == STATE_ATTACHED;
+    }
+
+    /** Current lifecycle state, one of the STATE constants. */
+    int getState() {
+        return state.get();
     }
     /* End methods to make root view and attached status available to the subclass.  */
 
+    /** Begin methods used by the floating view service to manage the attached view budget. */
+    long getLastInteractionTime() {
+        return lastInteractionTime;
+    }
+
+    /** Called by {@link FloatingViewTouchListener} whenever the user touches our root view. */
+    void onInteraction() {
+        lastInteractionTime = SystemClock.elapsedRealtime();
+        if (isCollapsed) {
+            // The user has touched our placeholder so restore the full floating view.
+            isCollapsed = false;
+            onExpand();
+        }
+        if (isAttached()) {
+            exitIdle();
+            scheduleIdleTimeout();
+        }
+    }
+
+    protected boolean isCollapsed() {
+        return isCollapsed;
+    }
+
+    /**
+     * Collapse to a minimal placeholder, keeping our window attached.
+     * @return  False if the subclass does not support collapsing.
+     */
+    boolean collapse() {
+        if (!isCollapsed && isAttached()) {
+            // Our layout only shrinks on the next pass, so take our target size up front.
+            long bytes = getCollapsedEstimatedBytes();
+            if (onCollapse()) {
+                isCollapsed = true;
+                collapsedBytes = bytes;
+            }
+        }
+        return isCollapsed;
+    }
+
+    /**
+     * Estimate the bytes pinned by our window surface,
+     * our window is translucent so assume 4 bytes per pixel.
+     */
+    protected long getEstimatedBytes() {
+        return 4L * getRootView().getWidth() * getRootView().getHeight();
+    }
+
+    /**
+     * Estimate the bytes our window surface will pin once collapsed, from the size
+     * we collapse to rather than our current layout. By default we don't shrink.
+     */
+    protected long getCollapsedEstimatedBytes() {
+        return getEstimatedBytes();
+    }
+
+    /** Bytes counted against the attached view budget, our collapsed target once collapsed. */
+    long getBudgetedBytes() {
+        return isCollapsed ? collapsedBytes : getEstimatedBytes();
+    }
+
+    /** Whether collapsing would actually shrink us. */
+    boolean canCollapseSmaller() {
+        return !isCollapsed && getCollapsedEstimatedBytes() < getEstimatedBytes();
+    }
+
+    /**
+     * Subclasses which can shrink to a minimal placeholder override this and return true.
+     * By default we can't be collapsed and will be detached instead.
+     */
+    protected boolean onCollapse() { return false; }
+
+    /** Restore the full floating view after {@link #onCollapse()}. */
+    protected void onExpand() { }
+
+    /** Called just before our root view is added to the window manager. */
+    protected void onAttaching() { }
+
+    /** Called once our root view has been added to the window manager. */
+    protected void onAttached() { }
+
+    /** Called once our root view has been removed from the window manager. */
+    protected void onDetached() { }
+
+    /** Subclasses override this to release any resources they have cached. */
+    protected void onTrimMemory(int level) { }
+
+    /**
+     * Whether a trim level asks us to release caches. UI hidden is sent every time
+     * our activity goes to the background, which isn't memory pressure, so it doesn't.
+     */
+    protected static boolean isReleaseCachesLevel(int level) {
+        return level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+    }
+    /* End methods used by the floating view service to manage the attached view budget. */
+
+    /**
+     * Begin methods to manage our idle low power mode.
+     * Rather than polling, a single timeout on the shared timer wheel is rescheduled
+     * whenever we are touched, so an idle floating view costs nothing until it expires.
+     */
+
+    /**
+     * Dim, shrink and/or dock to an edge once nobody has touched us for a while,
+     * returning to normal as soon as we are touched again.
+     *
+     * @param delayMs   Time without interaction before we go idle, zero to never go idle.
+     * @param policy    Any of {@link #IDLE_DIM}, {@link #IDLE_SHRINK} and {@link #IDLE_DOCK}.
+     */
+    public void setIdlePolicy(long delayMs, int policy) {
+        idleDelayMs = delayMs;
+        idlePolicy = policy;
+        if (isAttached()) {
+            exitIdle();
+            scheduleIdleTimeout();
+        }
+    }
+
+    public boolean isIdle() {
+        return isIdle;
+    }
+
+    /** Time we have spent idle while attached. */
+    public long getIdleTimeMs() {
+        long current = isAttached() && isIdle ? SystemClock.elapsedRealtime() - idlePeriodStart : 0;
+        return totalIdleMs + current;
+    }
+
+    /** Time we have spent attached but not idle. */
+    public long getActiveTimeMs() {
+        long current = isAttached() && !isIdle
+                ? SystemClock.elapsedRealtime() - idlePeriodStart : 0;
+        return totalActiveMs + current;
+    }
+
+    public int getNumIdlePeriods() {
+        return numIdlePeriods;
+    }
+
+    private void scheduleIdleTimeout() {
+        if (idleDelayMs > 0 && idlePolicy != 0) {
+            TimerWheel.getInstance().schedule(idleTimeout, idleDelayMs);
+        } else {
+            TimerWheel.getInstance().cancel(idleTimeout);
+        }
+    }
+
+    private final TimerWheel.Timeout idleTimeout = new TimerWheel.Timeout() {
+        @Override
+        public void onTimeout() {
+            enterIdle();
+        }
+    };
+
+    private void enterIdle() {
+        if (isIdle || !isAttached()) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        totalActiveMs += now - idlePeriodStart;
+        idlePeriodStart = now;
+        isIdle = true;
+        numIdlePeriods++;
+
+        FloatingViewAnimator animator = FloatingViewAnimator.getInstance();
+        if ((idlePolicy & IDLE_DIM) == IDLE_DIM) {
+            animator.animate(this, FloatingViewAnimator.ALPHA, IDLE_ALPHA,
+                    IDLE_ANIMATION_MS, null);
+        }
+        if ((idlePolicy & IDLE_SHRINK) == IDLE_SHRINK) {
+            animator.animate(this, FloatingViewAnimator.SCALE, IDLE_SCALE,
+                    IDLE_ANIMATION_MS, null);
+        }
+        if ((idlePolicy & IDLE_DOCK) == IDLE_DOCK && !isAllowedOffScreen()) {
+            animator.animate(this, FloatingViewAnimator.WINDOW_X, getNearestEdgeX(),
+                    IDLE_ANIMATION_MS, dockEndListener);
+        }
+
+        // A hardware layer would keep its memory for as long as we are idle.
+        previousLayerType = rootView.getLayerType();
+        if (previousLayerType != View.LAYER_TYPE_NONE) {
+            rootView.setLayerType(View.LAYER_TYPE_NONE, null);
+        }
+        onIdle();
+    }
+
+    /** Return to normal straight away, without animating. */
+    private void exitIdle() {
+        if (!isIdle) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        totalIdleMs += now - idlePeriodStart;
+        idlePeriodStart = now;
+        isIdle = false;
+
+        FloatingViewAnimator animator = FloatingViewAnimator.getInstance();
+        if ((idlePolicy & IDLE_DIM) == IDLE_DIM) {
+            animator.cancel(this, FloatingViewAnimator.ALPHA);
+            rootView.setAlpha(1f);
+        }
+        if ((idlePolicy & IDLE_SHRINK) == IDLE_SHRINK) {
+            animator.cancel(this, FloatingViewAnimator.SCALE);
+            rootView.setScaleX(1f);
+            rootView.setScaleY(1f);
+        }
+        // We stay docked, the user can drag us from there.
+        if (previousLayerType != View.LAYER_TYPE_NONE) {
+            rootView.setLayerType(previousLayerType, null);
+        }
+        onActive();
+    }
+
+    /** Begin our first active period once attached. */
+    private void startIdleTracking() {
+        idlePeriodStart = SystemClock.elapsedRealtime();
+        scheduleIdleTimeout();
+    }
+
+    /** End our current period once detached. */
+    private void stopIdleTracking() {
+        TimerWheel.getInstance().cancel(idleTimeout);
+        if (isIdle) {
+            exitIdle();
+        }
+        totalActiveMs += SystemClock.elapsedRealtime() - idlePeriodStart;
+    }
+
+    /** Layout x of whichever side of the display we are closest to. */
+    private int getNearestEdgeX() {
+        int width = rootView.getWidth();
+        int gravity = floatingLayoutParams.gravity;
+        int minX = displayBounds.clampX(Integer.MIN_VALUE, width, gravity);
+        int maxX = displayBounds.clampX(Integer.MAX_VALUE, width, gravity);
+        int x = floatingLayoutParams.x;
+        return x - minX < maxX - x ? minX : maxX;
+    }
+
+    /** Save our docked position once we get there. */
+    private final FloatingViewAnimator.OnAnimationEndListener dockEndListener =
+            new FloatingViewAnimator.OnAnimationEndListener() {
+        @Override
+        public void onAnimationEnd(FloatingView floatingView, int property, boolean cancelled) {
+            if (!cancelled) {
+                notifySnapshotChanged();
+            }
+        }
+    };
+
+    /** Subclasses cancel any timers or callbacks they don't need while idle. */
+    protected void onIdle() { }
+
+    /** Called as soon as we are touched while idle. */
+    protected void onActive() { }
+    /* End methods to manage our idle low power mode. */
+
     /** 
      * Attach our floating view to the current views in the window manager 
      * and start the foreground notification if requested.
+     * If the floating view service hasn't connected yet the attach is queued
+     * and applied once when it does.
      */
-    protected synchronized void attachToWindow(final Context context, boolean startForeground) {
-        if (!isAttached) {
-            // Double check that we have draw overlay permission.
-            if (checkDrawOverlayPermission(context)) {
-                // Attach the floating view to the current views in the window manager.
-                windowManager.addView(rootView, floatingLayoutParams);
-                isAttached = true;
-
-                if(startForeground) {
-                    
-                    if (floatingViewService !=null) {
-                        // If the floating view service is already bound,
-                        // then start the foreground notification.
-                        floatingViewService.startForeground(context);
-                    } else { 
-                        // Otherwise set our switch 
-                        // to start foreground notification when the service starts.
-                        this.startForeground = true;
-                    }
-                }
-            } else { 
-                // Somehow we arrived here without draw overlay permission, 
-                // return to the main activity.
-                Intent intent = new Intent(context, MainActivity.class);
-                intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_NEW_TASK);
-                context.startActivity(intent);
-                Log.w(TAG, "Attempt to attach FloatingView without DrawOverlay permission");
+    protected void attachToWindow(final Context context, boolean startForeground) {
+        TraceCompat.beginSection(TRACE_ATTACH);
+        try {
+            attachToWindowInternal(context, startForeground);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private void attachToWindowInternal(Context context, boolean startForeground) {
+        int current = state.get();
+        if (current == STATE_CREATED || current == STATE_BINDING) {
+            // Queue the attach until the floating view service has connected.
+            pendingAttachContext = context;
+            addPendingOps(PENDING_ATTACH | (startForeground ? PENDING_FOREGROUND : 0));
+            if (current == STATE_CREATED) {
+                // We've been unbound, so bind again.
+                bindFloatingViewService();
+            }
+            current = state.get();
+            if (current != STATE_CREATED && current != STATE_BINDING) {
+                // The service connected while we were queueing, so apply it ourselves.
+                applyPendingOps();
             }
+            return;
+        }
+
+        if (current != STATE_READY && current != STATE_DETACHED) {
+            // We are already attached.
+            return;
+        }
+
+        // Double check that we have draw overlay permission.
+        if (!checkDrawOverlayPermission(context)) {
+            // Somehow we arrived here without draw overlay permission, 
+            // return to the main activity.
+            Intent intent = new Intent(context, MainActivity.class);
+            intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_NEW_TASK);
+            context.startActivity(intent);
+            Log.w(TAG, "Attempt to attach FloatingView without DrawOverlay permission");
+            return;
+        }
+
+        if (!addToWindow(current)) {
+            // Someone else has attached or detached us in the meantime.
+            return;
+        }
+
+        FloatingViewService service = floatingViewService;
+        if (service != null) {
+            // Let the service evict older floating views if we are over budget.
+            service.onFloatingViewAttached(this);
+        }
+        onAttached();
+
+        if (startForeground && service != null) {
+            service.startForeground(context);
         }
     }
 
@@ -204,21 +982,212 @@ public abstract class FloatingView {
      * Detach the floating view from window manager views 
      * and dismiss the foreground notification if requested.
      */
-    protected synchronized void detachFromWindow(boolean dismissNotification) {
-        if (isAttached) {
+    protected void detachFromWindow(boolean dismissNotification) {
+        TraceCompat.beginSection(TRACE_DETACH);
+        try {
+            if (removeFromWindow()) {
+                FloatingViewService service = floatingViewService;
+                if (service != null) {
+                    service.removeFloatingView(this);
+                }
+            }
+
+            if (dismissNotification) {
+                FloatingViewService service = floatingViewService;
+                if (service != null) {
+                    service.dismissForegroundNotification();
+                }
+            }
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * Detach ourselves and unbind from the floating view service, for when we dismiss
+     * ourselves and nothing else is going to unbind us. Attaching again binds again.
+     */
+    protected void dismissFromWindow(boolean dismissNotification) {
+        detachFromWindow(dismissNotification);
+        unbindFloatingViewService();
+    }
+
+    /** Begin methods to add and remove our root view, shared with floating view service batches. */
+    private boolean addToWindow(int fromState) {
+        if (!state.compareAndSet(fromState, STATE_ATTACHED)) {
+            return false;
+        }
+
+        try {
+            onAttaching();
+            // Attach the floating view to the current views in the window manager.
+            long start = System.nanoTime();
+            windowManager.addView(rootView, floatingLayoutParams);
+            attachLatency.record(System.nanoTime() - start);
+            postVisibleFrame(start, false);
+        } catch (RuntimeException e) {
+            state.compareAndSet(STATE_ATTACHED, fromState);
+            throw e;
+        }
+        lastInteractionTime = SystemClock.elapsedRealtime();
+        displayBounds.updateCutout(rootView);
+        startIdleTracking();
+        return true;
+    }
+
+    /**
+     * Remove our root view from the window manager.
+     * @return  True if we were attached and have been removed.
+     */
+    boolean removeFromWindow() {
+        // A detach cancels any attach still waiting for the service.
+        pendingOps.set(0);
+
+        if (state.compareAndSet(STATE_ATTACHED, STATE_DETACHED)) {
             windowManager.removeView(rootView);
-            isAttached = false;
+            if (isHidden) {
+                // Restore our window and view so we are visible when attached again.
+                isHidden = false;
+                floatingLayoutParams.flags &= ~WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+                rootView.setVisibility(View.VISIBLE);
+            }
+            FloatingViewAnimator.getInstance().cancelAll(this);
+            stopIdleTracking();
+            if (isCollapsed) {
+                // Restore our full content so we are complete if attached again.
+                isCollapsed = false;
+                onExpand();
+            }
+            onDetached();
+            return true;
+        }
+        return false;
+    }
+
+    /** Begin methods to hide and show our window without removing and adding it again. */
 
-            floatingViewService.removeFloatingView(this);
+    /**
+     * Keep our window attached, but invisible and passing touches through,
+     * so {@link #show()} is a single window update rather than a new surface and first frame.
+     */
+    public void hide() {
+        if (isHidden || !isAttached()) {
+            return;
         }
+        isHidden = true;
+        // Nobody can touch us while hidden, so we can't become idle.
+        TimerWheel.getInstance().cancel(idleTimeout);
+        rootView.setVisibility(View.INVISIBLE);
+        floatingLayoutParams.flags |= WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+        updateLayoutParams();
+        notifyVisibilityChanged();
+    }
 
-        if (dismissNotification) {
-            floatingViewService.dismissForegroundNotification();
+    public void show() {
+        if (!isHidden || !isAttached()) {
+            return;
         }
+        isHidden = false;
+        long start = System.nanoTime();
+        rootView.setVisibility(View.VISIBLE);
+        floatingLayoutParams.flags &= ~WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+        updateLayoutParams();
+        scheduleIdleTimeout();
+        postVisibleFrame(start, true);
+        notifyVisibilityChanged();
+    }
+
+    public boolean isHidden() {
+        return isHidden;
     }
 
+    /** Hidden floating views don't count as showing or against the attached view budget. */
+    private void notifyVisibilityChanged() {
+        FloatingViewService service = floatingViewService;
+        if (service != null) {
+            service.onFloatingViewVisibilityChanged(this);
+        }
+    }
+
+    /** Measure the time until we are drawn, which happens on our next frame. */
+    private void postVisibleFrame(long startNanos, boolean fromShow) {
+        visibleRequestedNanos = startNanos;
+        visibleFromShow = fromShow;
+        if (!visibleFramePosted) {
+            visibleFramePosted = true;
+            Choreographer.getInstance().postFrameCallback(visibleFrameCallback);
+        }
+    }
+
+    private final Choreographer.FrameCallback visibleFrameCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            visibleFramePosted = false;
+            long latency = System.nanoTime() - visibleRequestedNanos;
+            if (visibleFromShow) {
+                showToFrameLatency.record(latency);
+            } else {
+                attachToFrameLatency.record(latency);
+            }
+        }
+    };
+    /* End methods to hide and show our window. */
+
+    /**
+     * Attach as part of a floating view service batch, which has already checked permission
+     * and takes care of the foreground notification. We may still be waiting for the service
+     * to connect, it will find us attached when it does.
+     *
+     * @return  The state we were attached from, or -1 if we can't be attached right now.
+     */
+    int attachInBatch() {
+        int current = state.get();
+        if (current != STATE_BINDING && current != STATE_READY && current != STATE_DETACHED) {
+            return -1;
+        }
+        // The batch replaces any attach still waiting for the service.
+        pendingOps.set(0);
+        try {
+            if (!addToWindow(current)) {
+                return -1;
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to attach FloatingView in batch : " + e.getMessage());
+            return -1;
+        }
+        onAttached();
+        return current;
+    }
+
+    /** Undo {@link #attachInBatch()} when a later attach in the same batch has failed. */
+    void rollbackAttachInBatch(int previousState) {
+        if (removeFromWindow()) {
+            state.compareAndSet(STATE_DETACHED, previousState);
+        }
+    }
+    /* End methods to add and remove our root view, shared with floating view service batches. */
+
+    /** Begin methods to queue and apply operations requested before the service connected. */
+    private void addPendingOps(int ops) {
+        int current;
+        do {
+            current = pendingOps.get();
+        } while (!pendingOps.compareAndSet(current, current | ops));
+    }
+
+    private void applyPendingOps() {
+        // Taking all the pending operations at once guarantees they are only applied once.
+        int ops = pendingOps.getAndSet(0);
+        if ((ops & PENDING_ATTACH) == PENDING_ATTACH) {
+            attachToWindow(pendingAttachContext, (ops & PENDING_FOREGROUND) == PENDING_FOREGROUND);
+        }
+        pendingAttachContext = null;
+    }
+    /* End methods to queue and apply operations requested before the service connected. */
+
     /** Simple test for draw overlay permission. */
-    private boolean checkDrawOverlayPermission(Context context) {
+    static boolean checkDrawOverlayPermission(Context context) {
         
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             // If the device is running Marshmallow or above 
@@ -231,74 +1200,189 @@ public abstract class FloatingView {
 
     /**  Start and bind to the floating view service. */
     private void bindFloatingViewService(){
-        if(!floatingViewBound) {
+        if(state.compareAndSet(STATE_CREATED, STATE_BINDING)) {
             Context context =getRootView().getContext();
-            Intent intent = new Intent(context, FloatingViewService.class);
-            floatingViewBound =context.bindService(intent, connection, Context.BIND_AUTO_CREATE);
+            Intent intent = new Intent(context, floatingViewServiceClass);
+            TraceCompat.beginSection(TRACE_BIND);
+            try {
+                floatingViewBound =
+                        context.bindService(intent, connection, Context.BIND_AUTO_CREATE);
+            } finally {
+                TraceCompat.endSection();
+            }
+            if (floatingViewBound) {
+                numBinds.incrementAndGet();
+            } else {
+                // We can still float without the service, we just can't use its features.
+                Log.w(TAG, "Unable to bind to the floating view service");
+                if (state.compareAndSet(STATE_BINDING, STATE_READY)) {
+                    applyPendingOps();
+                }
+            }
         }
     }
 
     /** If we are bound to the floating view service then unbind. */
     protected void unbindFloatingViewService() {
         if(floatingViewBound){
+            if (isAttached()) {
+                // We don't stay attached without the service, detach first so it forgets us.
+                detachFromWindow(false);
+            }
+            FloatingViewService service = floatingViewService;
+            if (service != null) {
+                // Don't leave the service holding on to us once we are no longer attached.
+                service.releaseFloatingView(this);
+            }
+            unregisterServiceReceiver();
             getRootView().getContext().unbindService(connection);
+            numUnbinds.incrementAndGet();
             floatingViewBound = false;
+            floatingViewService = null;
+            // We go back to waiting to be bound again, including when we were
+            // still waiting for the service to connect or reconnect.
+            int current = state.get();
+            while ((current == STATE_BINDING || current == STATE_READY
+                    || current == STATE_DETACHED)
+                    && !state.compareAndSet(current, STATE_CREATED)) {
+                current = state.get();
+            }
         }
     }
 
     /**
      * Define callbacks for service binding, passed to bindService().
+     * The system keeps our connection for as long as we are bound,
+     * so it only holds us weakly and never keeps a dropped floating view alive.
      */
-    private final ServiceConnection connection = new ServiceConnection() {
+    private final ServiceConnection connection = new FloatingViewServiceConnection(this);
+
+    private static final class FloatingViewServiceConnection implements ServiceConnection {
+        private final WeakReference<FloatingView> floatingViewReference;
+
+        FloatingViewServiceConnection(FloatingView floatingView) {
+            floatingViewReference = new WeakReference<>(floatingView);
+        }
 
         @Override
         public void onServiceConnected(ComponentName className, IBinder service) {
-            Context context = getRootView().getContext();
-            // We've bound to floating view service, get the floating view service instance.
-            FloatingViewService.LocalBinder binder = (FloatingViewService.LocalBinder) service;
-            floatingViewService = binder.getService();
+            FloatingView floatingView = floatingViewReference.get();
+            if (floatingView == null) {
+                return;
+            }
+            TraceCompat.beginSection(TRACE_SERVICE_CONNECTED);
+            try {
+                floatingView.onFloatingViewServiceConnected(
+                        (FloatingViewService.LocalBinder) service);
+            } finally {
+                TraceCompat.endSection();
+            }
+        }
 
-            floatingViewService.addFloatingView(instance);
+        @Override
+        public void onServiceDisconnected(ComponentName arg0) {
+            FloatingView floatingView = floatingViewReference.get();
+            if (floatingView != null) {
+                floatingView.onFloatingViewServiceDisconnected();
+            }
+        }
+    }
 
-            // Create an intent using floating view service INTENT_CLOSE flag
-            // and register it to our broadcast receiver.
-            IntentFilter intentFilter = new IntentFilter();
-            intentFilter.addAction(FloatingViewService.INTENT_CLOSE);
-            context.registerReceiver(floatingViewServiceReceiver, intentFilter);
+    private void onFloatingViewServiceConnected(FloatingViewService.LocalBinder binder) {
+        Context context = getRootView().getContext();
+        // We've bound to floating view service, get the floating view service instance.
+        FloatingViewService floatingViewService = binder.getService();
+        this.floatingViewService = floatingViewService;
 
-            if (startForeground) {
-                floatingViewService.startForeground(context);
-            }
+        floatingViewService.addFloatingView(instance);
+
+        registerServiceReceiver(context);
 
+        if (state.compareAndSet(STATE_BINDING, STATE_READY)) {
+            // Apply any attach which was waiting for us to connect.
+            applyPendingOps();
+        } else if (isAttached()) {
+            // We have reconnected while attached, check the budget again.
+            floatingViewService.onFloatingViewAttached(instance);
         }
+    }
 
-        @Override
-        public void onServiceDisconnected(ComponentName arg0) {
-            getRootView().getContext().unregisterReceiver(floatingViewServiceReceiver);
-            floatingViewService =null;
+    private void onFloatingViewServiceDisconnected() {
+        unregisterServiceReceiver();
+        floatingViewService =null;
+        // The system will reconnect us when the service is restarted,
+        // until then attaches wait for us to be connected again.
+        int current = state.get();
+        while ((current == STATE_READY || current == STATE_DETACHED)
+                && !state.compareAndSet(current, STATE_BINDING)) {
+            current = state.get();
         }
-    };
+    }
 
     protected void broadcastOnClick(String onClickAction){
-        if(floatingViewBound){
-            floatingViewService.broadcastOnClick(onClickAction);
+        FloatingViewService service = floatingViewService;
+        if(floatingViewBound && service != null){
+            service.broadcastOnClick(onClickAction);
         }
     }
 
+    protected void broadcastOnExit(String onExitAction){
+        FloatingViewService service = floatingViewService;
+        if(floatingViewBound && service != null){
+            service.broadcastOnExit(onExitAction);
+        }
+    }
+
+    /**
+     * Begin methods to register our receiver with the local broadcast manager the floating
+     * view service sends with, at most once however many times we reconnect.
+     */
+    private void registerServiceReceiver(Context context) {
+        if (!receiverRegistered) {
+            // Create an intent using floating view service INTENT_CLOSE flag
+            // and register it to our broadcast receiver.
+            IntentFilter intentFilter = new IntentFilter();
+            intentFilter.addAction(FloatingViewService.INTENT_CLOSE);
+            LocalBroadcastManager.getInstance(context)
+                    .registerReceiver(floatingViewServiceReceiver, intentFilter);
+            receiverRegistered = true;
+            numRegisteredReceivers++;
+        }
+    }
+
+    private void unregisterServiceReceiver() {
+        if (receiverRegistered) {
+            LocalBroadcastManager.getInstance(getRootView().getContext())
+                    .unregisterReceiver(floatingViewServiceReceiver);
+            receiverRegistered = false;
+            numRegisteredReceivers--;
+        }
+    }
+    /* End methods to register our receiver. */
+
     /**
-     * Receive broadcasts from the floating view service.
+     * Receive broadcasts from the floating view service. The local broadcast manager keeps
+     * our receiver while it is registered, so it also only holds us weakly.
      */
-    private final BroadcastReceiver floatingViewServiceReceiver = new BroadcastReceiver() {
+    private final BroadcastReceiver floatingViewServiceReceiver =
+            new FloatingViewServiceReceiver(this);
+
+    private static final class FloatingViewServiceReceiver extends BroadcastReceiver {
+        private final WeakReference<FloatingView> floatingViewReference;
+
+        FloatingViewServiceReceiver(FloatingView floatingView) {
+            floatingViewReference = new WeakReference<>(floatingView);
+        }
+
         @Override
         public void onReceive(Context context, Intent intent) {
-            String action = intent.getAction();
-            if(action !=null) {
-                // If the floating view service has broadcast intent to close,
-                // then we are no longer bound.
-                if (intent.getAction().equals(FloatingViewService.INTENT_CLOSE)) {
-                    floatingViewBound = false;
-                }
+            FloatingView floatingView = floatingViewReference.get();
+            // If the floating view service has broadcast intent to close,
+            // then unbind so we don't keep our connection or this receiver.
+            if (floatingView != null
+                    && FloatingViewService.INTENT_CLOSE.equals(intent.getAction())) {
+                floatingView.unbindFloatingViewService();
             }
         }
-    };
+    }
 }
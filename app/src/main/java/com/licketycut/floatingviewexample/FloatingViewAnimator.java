@@ -0,0 +1,345 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.view.Choreographer;
+import android.view.View;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simple singleton animation engine shared by all floating views, driven by a single
+ * {@link Choreographer} callback which is only posted while something is animating.
+ * Animation state is kept in preallocated primitive arrays and properties are set directly,
+ * so starting, running and ending animations doesn't allocate or use reflection.
+ * Window position and size changes are gathered and applied with one window update
+ * per floating view per frame. Must only be used from the main thread.
+ */
+public class FloatingViewAnimator {
+    // Properties we can animate, view properties are set on the floating view's root view.
+    public static final int TRANSLATION_X = 0;
+    public static final int TRANSLATION_Y = 1;
+    public static final int ALPHA = 2;
+    public static final int SCALE = 3;
+    // Window properties are in the floating view's layout coordinates.
+    public static final int WINDOW_X = 4;
+    public static final int WINDOW_Y = 5;
+    public static final int WINDOW_WIDTH = 6;
+    public static final int WINDOW_HEIGHT = 7;
+
+    // Initial number of concurrent animations we have room for, grown if ever exceeded.
+    private static final int INITIAL_CAPACITY = 16;
+
+    // One and only instance of our singleton class.
+    private static final FloatingViewAnimator ourInstance = new FloatingViewAnimator();
+
+    public static FloatingViewAnimator getInstance() {
+        return ourInstance;
+    }
+
+    /**
+     * Called once an animation has ended. Owners keep a single listener,
+     * so ending an animation doesn't allocate.
+     */
+    public interface OnAnimationEndListener {
+
+        void onAnimationEnd(FloatingView floatingView, int property, boolean cancelled);
+    }
+
+    // Running animations, slots 0 to count - 1 are in use.
+    private int count = 0;
+    private FloatingView[] views = new FloatingView[INITIAL_CAPACITY];
+    private int[] properties = new int[INITIAL_CAPACITY];
+    private float[] fromValues = new float[INITIAL_CAPACITY];
+    private float[] toValues = new float[INITIAL_CAPACITY];
+    private long[] startNanos = new long[INITIAL_CAPACITY];
+    private long[] durationNanos = new long[INITIAL_CAPACITY];
+    private OnAnimationEndListener[] listeners = new OnAnimationEndListener[INITIAL_CAPACITY];
+
+    // Animations which ended this frame, waiting for their listeners to be called.
+    private int endedCount = 0;
+    private FloatingView[] endedViews = new FloatingView[INITIAL_CAPACITY];
+    private int[] endedProperties = new int[INITIAL_CAPACITY];
+    private OnAnimationEndListener[] endedListeners = new OnAnimationEndListener[INITIAL_CAPACITY];
+    private boolean[] endedCancelled = new boolean[INITIAL_CAPACITY];
+
+    private boolean framePosted = false;
+
+    // Counters for diagnostics.
+    private long numAnimations = 0;
+    private long numFrames = 0;
+    private long numWindowUpdates = 0;
+
+    private FloatingViewAnimator() { }
+
+    /**
+     * Animate a property from its current value, replacing any animation of the same property.
+     *
+     * @param floatingView  Floating view to animate.
+     * @param property      One of our property constants.
+     * @param toValue       Value to end on.
+     * @param durationMs    Duration of the animation.
+     * @param listener      Listener to call once the animation ends, or null.
+     */
+    public void animate(FloatingView floatingView, int property, float toValue, long durationMs,
+                        OnAnimationEndListener listener) {
+        int slot = indexOf(floatingView, property);
+        if (slot < 0) {
+            if (count == views.length) {
+                grow();
+            }
+            slot = count++;
+            views[slot] = floatingView;
+            properties[slot] = property;
+        }
+        fromValues[slot] = getValue(floatingView, property);
+        toValues[slot] = toValue;
+        startNanos[slot] = System.nanoTime();
+        durationNanos[slot] = Math.max(1, TimeUnit.MILLISECONDS.toNanos(durationMs));
+        listeners[slot] = listener;
+        numAnimations++;
+
+        if (!framePosted) {
+            framePosted = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+
+    /** Cancel an animation, leaving the property where it is. */
+    public void cancel(FloatingView floatingView, int property) {
+        int slot = indexOf(floatingView, property);
+        if (slot >= 0) {
+            endSlot(slot, true);
+            callEndListeners();
+        }
+    }
+
+    /** Cancel all of a floating view's animations, called when it is detached. */
+    public void cancelAll(FloatingView floatingView) {
+        for (int i = count - 1; i >= 0; i--) {
+            if (views[i] == floatingView) {
+                endSlot(i, true);
+            }
+        }
+        callEndListeners();
+    }
+
+    public boolean isAnimating(FloatingView floatingView, int property) {
+        return indexOf(floatingView, property) >= 0;
+    }
+
+    public long getNumAnimations() {
+        return numAnimations;
+    }
+
+    public long getNumFrames() {
+        return numFrames;
+    }
+
+    public long getNumWindowUpdates() {
+        return numWindowUpdates;
+    }
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            framePosted = false;
+            numFrames++;
+
+            for (int i = count - 1; i >= 0; i--) {
+                float fraction = Math.min(1f,
+                        (float) (frameTimeNanos - startNanos[i]) / durationNanos[i]);
+                if (fraction < 0f) {
+                    // We were started after this frame began.
+                    fraction = 0f;
+                }
+                // Decelerate so we come to rest smoothly.
+                float eased = 1f - (1f - fraction) * (1f - fraction);
+                setValue(views[i], properties[i],
+                        fromValues[i] + (toValues[i] - fromValues[i]) * eased);
+            }
+
+            // Apply each floating view's window changes with a single update.
+            for (int i = 0; i < count; i++) {
+                if (views[i].commitAnimatedLayout()) {
+                    numWindowUpdates++;
+                }
+            }
+
+            for (int i = count - 1; i >= 0; i--) {
+                if (frameTimeNanos - startNanos[i] >= durationNanos[i]) {
+                    endSlot(i, false);
+                }
+            }
+
+            if (count > 0) {
+                framePosted = true;
+                Choreographer.getInstance().postFrameCallback(frameCallback);
+            }
+            // Listeners are called last, they are free to start and cancel animations.
+            callEndListeners();
+        }
+    };
+
+    /** Begin methods to read and write properties directly rather than by reflection. */
+    private float getValue(FloatingView floatingView, int property) {
+        View rootView = floatingView.getRootView();
+        switch (property) {
+            case TRANSLATION_X:
+                return rootView.getTranslationX();
+            case TRANSLATION_Y:
+                return rootView.getTranslationY();
+            case ALPHA:
+                return rootView.getAlpha();
+            case SCALE:
+                return rootView.getScaleX();
+            case WINDOW_X:
+                return floatingView.getLayoutX();
+            case WINDOW_Y:
+                return floatingView.getLayoutY();
+            case WINDOW_WIDTH:
+                return floatingView.getAnimatedLayoutWidth();
+            case WINDOW_HEIGHT:
+                return floatingView.getAnimatedLayoutHeight();
+            default:
+                throw new IllegalArgumentException("Unknown property " + property);
+        }
+    }
+
+    private void setValue(FloatingView floatingView, int property, float value) {
+        View rootView = floatingView.getRootView();
+        switch (property) {
+            case TRANSLATION_X:
+                rootView.setTranslationX(value);
+                break;
+            case TRANSLATION_Y:
+                rootView.setTranslationY(value);
+                break;
+            case ALPHA:
+                rootView.setAlpha(value);
+                break;
+            case SCALE:
+                rootView.setScaleX(value);
+                rootView.setScaleY(value);
+                break;
+            case WINDOW_X:
+                floatingView.setAnimatedLayoutX(Math.round(value));
+                break;
+            case WINDOW_Y:
+                floatingView.setAnimatedLayoutY(Math.round(value));
+                break;
+            case WINDOW_WIDTH:
+                floatingView.setAnimatedLayoutWidth(Math.round(value));
+                break;
+            case WINDOW_HEIGHT:
+                floatingView.setAnimatedLayoutHeight(Math.round(value));
+                break;
+        }
+    }
+    /* End methods to read and write properties directly rather than by reflection. */
+
+    /** Begin methods to maintain our slot arrays. */
+    private int indexOf(FloatingView floatingView, int property) {
+        for (int i = 0; i < count; i++) {
+            if (views[i] == floatingView && properties[i] == property) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Move an animation to our ended list, filling its slot with our last animation. */
+    private void endSlot(int slot, boolean cancelled) {
+        if (endedCount == endedViews.length) {
+            growEnded();
+        }
+        endedViews[endedCount] = views[slot];
+        endedProperties[endedCount] = properties[slot];
+        endedListeners[endedCount] = listeners[slot];
+        endedCancelled[endedCount] = cancelled;
+        endedCount++;
+
+        int last = --count;
+        views[slot] = views[last];
+        properties[slot] = properties[last];
+        fromValues[slot] = fromValues[last];
+        toValues[slot] = toValues[last];
+        startNanos[slot] = startNanos[last];
+        durationNanos[slot] = durationNanos[last];
+        listeners[slot] = listeners[last];
+        views[last] = null;
+        listeners[last] = null;
+    }
+
+    /** Call the listeners of ended animations, which may end more animations as we go. */
+    private void callEndListeners() {
+        while (endedCount > 0) {
+            endedCount--;
+            FloatingView floatingView = endedViews[endedCount];
+            int property = endedProperties[endedCount];
+            OnAnimationEndListener listener = endedListeners[endedCount];
+            boolean cancelled = endedCancelled[endedCount];
+            endedViews[endedCount] = null;
+            endedListeners[endedCount] = null;
+            if (listener != null) {
+                listener.onAnimationEnd(floatingView, property, cancelled);
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = views.length * 2;
+        FloatingView[] newViews = new FloatingView[capacity];
+        System.arraycopy(views, 0, newViews, 0, count);
+        views = newViews;
+        int[] newProperties = new int[capacity];
+        System.arraycopy(properties, 0, newProperties, 0, count);
+        properties = newProperties;
+        float[] newFromValues = new float[capacity];
+        System.arraycopy(fromValues, 0, newFromValues, 0, count);
+        fromValues = newFromValues;
+        float[] newToValues = new float[capacity];
+        System.arraycopy(toValues, 0, newToValues, 0, count);
+        toValues = newToValues;
+        long[] newStartNanos = new long[capacity];
+        System.arraycopy(startNanos, 0, newStartNanos, 0, count);
+        startNanos = newStartNanos;
+        long[] newDurationNanos = new long[capacity];
+        System.arraycopy(durationNanos, 0, newDurationNanos, 0, count);
+        durationNanos = newDurationNanos;
+        OnAnimationEndListener[] newListeners = new OnAnimationEndListener[capacity];
+        System.arraycopy(listeners, 0, newListeners, 0, count);
+        listeners = newListeners;
+    }
+
+    private void growEnded() {
+        int capacity = endedViews.length * 2;
+        FloatingView[] newEndedViews = new FloatingView[capacity];
+        System.arraycopy(endedViews, 0, newEndedViews, 0, endedCount);
+        endedViews = newEndedViews;
+        int[] newEndedProperties = new int[capacity];
+        System.arraycopy(endedProperties, 0, newEndedProperties, 0, endedCount);
+        endedProperties = newEndedProperties;
+        OnAnimationEndListener[] newEndedListeners = new OnAnimationEndListener[capacity];
+        System.arraycopy(endedListeners, 0, newEndedListeners, 0, endedCount);
+        endedListeners = newEndedListeners;
+        boolean[] newEndedCancelled = new boolean[capacity];
+        System.arraycopy(endedCancelled, 0, newEndedCancelled, 0, endedCount);
+        endedCancelled = newEndedCancelled;
+    }
+    /* End methods to maintain our slot arrays. */
+}
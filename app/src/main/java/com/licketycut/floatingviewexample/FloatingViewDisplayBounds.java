@@ -0,0 +1,276 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Point;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.DisplayCutout;
+import android.view.Gravity;
+import android.view.View;
+import android.view.WindowInsets;
+import android.view.WindowManager;
+
+import static android.content.Context.WINDOW_SERVICE;
+
+/**
+ * Cached bounds which floating views may be dragged within, shared by all floating views.
+ * The display size, status bar inset and display cutout are only looked up
+ * when the configuration or display changes, so clamping a position while dragging
+ * is plain arithmetic. Must only be used from the main thread.
+ */
+class FloatingViewDisplayBounds {
+
+    // One and only instance of our singleton class.
+    private static FloatingViewDisplayBounds ourInstance;
+
+    static FloatingViewDisplayBounds getInstance(Context context) {
+        if (ourInstance == null) {
+            ourInstance = new FloatingViewDisplayBounds(context.getApplicationContext());
+        }
+        return ourInstance;
+    }
+
+    private final Context context;
+    private final WindowManager windowManager;
+    private final Point size = new Point();
+
+    // Area available to floating views, relative to the window frame they are laid out in.
+    private int boundsWidth, boundsHeight;
+    private int statusBarHeight;
+    // Safe insets of the display cutout, known once a floating view has been laid out.
+    private int cutoutLeft, cutoutTop, cutoutRight;
+    private boolean cutoutKnown = false;
+
+    // Number of times we have looked up the display, for diagnostics.
+    private int numRefreshes = 0;
+
+    private FloatingViewDisplayBounds(Context context) {
+        this.context = context;
+        windowManager = (WindowManager) context.getSystemService(WINDOW_SERVICE);
+
+        context.registerComponentCallbacks(componentCallbacks);
+        DisplayManager displayManager =
+                (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+        if (displayManager != null) {
+            displayManager.registerDisplayListener(displayListener,
+                    new Handler(Looper.getMainLooper()));
+        }
+        refresh();
+    }
+
+    /**
+     * Look up the display, only called when it may have changed.
+     * Also called by the floating view service, which may hear about
+     * a configuration change before we do.
+     */
+    void refresh() {
+        numRefreshes++;
+        // Size of the display excluding the navigation bar.
+        windowManager.getDefaultDisplay().getSize(size);
+        int resourceId = context.getResources()
+                .getIdentifier("status_bar_height", "dimen", "android");
+        statusBarHeight = resourceId > 0
+                ? context.getResources().getDimensionPixelSize(resourceId) : 0;
+        updateBounds();
+    }
+
+    private void updateBounds() {
+        boundsWidth = Math.max(0, size.x - cutoutLeft - cutoutRight);
+        boundsHeight = Math.max(0, size.y - Math.max(statusBarHeight, cutoutTop));
+    }
+
+    /**
+     * Learn the display cutout from a floating view once it has been laid out,
+     * the cutout is only available from window insets.
+     */
+    void updateCutout(View attachedView) {
+        if (cutoutKnown || Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return;
+        }
+        attachedView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+            @Override
+            public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                       int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                v.removeOnLayoutChangeListener(this);
+                if (!cutoutKnown) {
+                    readCutout(v);
+                }
+            }
+        });
+    }
+
+    /**
+     * Read the display cutout again from a floating view which is already laid out,
+     * called when we reflow after a rotation since no new floating view may be attached.
+     */
+    void refreshCutout(View attachedView) {
+        if (cutoutKnown || Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return;
+        }
+        if (!readCutout(attachedView)) {
+            // Not laid out yet after all, learn it once it is.
+            updateCutout(attachedView);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.P)
+    private boolean readCutout(View attachedView) {
+        WindowInsets insets = attachedView.getRootWindowInsets();
+        if (insets == null) {
+            return false;
+        }
+        DisplayCutout cutout = insets.getDisplayCutout();
+        cutoutLeft = cutout != null ? cutout.getSafeInsetLeft() : 0;
+        cutoutTop = cutout != null ? cutout.getSafeInsetTop() : 0;
+        cutoutRight = cutout != null ? cutout.getSafeInsetRight() : 0;
+        cutoutKnown = true;
+        updateBounds();
+        return true;
+    }
+
+    /**
+     * Clamp a layout x so a window of this width stays within our bounds.
+     *
+     * @param x         Layout x, interpreted according to the gravity.
+     * @param width     Width of the window.
+     * @param gravity   Gravity of the window.
+     */
+    int clampX(int x, int width, int gravity) {
+        return clamp(x, Math.max(0, boundsWidth - width), isCenteredHorizontally(gravity));
+    }
+
+    /** Clamp a layout y, as {@link #clampX}. */
+    int clampY(int y, int height, int gravity) {
+        return clamp(y, Math.max(0, boundsHeight - height), isCenteredVertically(gravity));
+    }
+
+    private static int clamp(int offset, int range, boolean centered) {
+        if (centered) {
+            // Centered windows are offset from the middle of our bounds.
+            int center = range / 2;
+            return Math.max(-center, Math.min(range - center, offset));
+        }
+        // Left, right, top and bottom gravity all measure from their own edge.
+        return Math.max(0, Math.min(range, offset));
+    }
+
+    /**
+     * Begin methods to tell whether the window manager centers a window on each axis,
+     * which it also does when the gravity has no bits for that axis.
+     */
+    private static boolean isCenteredHorizontally(int gravity) {
+        int horizontal = gravity & Gravity.HORIZONTAL_GRAVITY_MASK;
+        return horizontal == Gravity.CENTER_HORIZONTAL || horizontal == 0;
+    }
+
+    private static boolean isCenteredVertically(int gravity) {
+        int vertical = gravity & Gravity.VERTICAL_GRAVITY_MASK;
+        return vertical == Gravity.CENTER_VERTICAL || vertical == 0;
+    }
+    /* End methods to tell whether the window manager centers a window. */
+
+    /**
+     * Express a layout x as a fraction of the distance a window of this width can travel
+     * from its gravity edge, so windows at an edge or the center stay there when we change.
+     *
+     * @return  The fraction, or NaN if the window can't travel at all.
+     */
+    float normalizeX(int x, int width, int gravity) {
+        return normalize(x, Math.max(0, boundsWidth - width),
+                isCenteredHorizontally(gravity));
+    }
+
+    float normalizeY(int y, int height, int gravity) {
+        return normalize(y, Math.max(0, boundsHeight - height),
+                isCenteredVertically(gravity));
+    }
+
+    /** Convert a fraction from {@link #normalizeX} back to a layout x within our bounds. */
+    int denormalizeX(float fraction, int width, int gravity) {
+        return denormalize(fraction, Math.max(0, boundsWidth - width),
+                isCenteredHorizontally(gravity));
+    }
+
+    int denormalizeY(float fraction, int height, int gravity) {
+        return denormalize(fraction, Math.max(0, boundsHeight - height),
+                isCenteredVertically(gravity));
+    }
+
+    private static float normalize(int offset, int range, boolean centered) {
+        if (range == 0) {
+            return Float.NaN;
+        }
+        // Centered windows are offset from the middle of our bounds.
+        return (float) (centered ? offset + range / 2 : offset) / range;
+    }
+
+    private static int denormalize(float fraction, int range, boolean centered) {
+        int offset = Math.round(fraction * range);
+        return centered ? offset - range / 2 : offset;
+    }
+
+    int getBoundsWidth() {
+        return boundsWidth;
+    }
+
+    int getBoundsHeight() {
+        return boundsHeight;
+    }
+
+    int getNumRefreshes() {
+        return numRefreshes;
+    }
+
+    private final ComponentCallbacks componentCallbacks = new ComponentCallbacks() {
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            // Rotation moves the cutout, so learn it again.
+            cutoutKnown = false;
+            cutoutLeft = cutoutTop = cutoutRight = 0;
+            refresh();
+        }
+
+        @Override
+        public void onLowMemory() {
+        }
+    };
+
+    private final DisplayManager.DisplayListener displayListener =
+            new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) {
+        }
+
+        @Override
+        public void onDisplayRemoved(int displayId) {
+        }
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            if (displayId == windowManager.getDefaultDisplay().getDisplayId()) {
+                refresh();
+            }
+        }
+    };
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.app.NotificationManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+
+/**
+ * Keeps the {@link FloatingViewService} foreground notification showing live status.
+ * Status changes are diffed against what is showing and coalesced,
+ * and the notification is never updated more often than our minimum interval,
+ * so any rate of events results in a bounded number of notify calls.
+ * Must only be used from the main thread.
+ */
+class FloatingViewNotificationUpdater {
+    // The system throttles apps which update notifications too often.
+    private static final long MIN_UPDATE_INTERVAL_MS = 1000;
+
+    /** Formats our status into notification text. */
+    interface StatusFormatter {
+
+        CharSequence formatStatus(int numAttached, int numClicks);
+    }
+
+    private final NotificationManager notificationManager;
+    private final int notificationId;
+    private final StatusFormatter formatter;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private NotificationCompat.Builder builder;
+    private boolean showing = false;
+
+    // Status which is showing and status waiting to be shown.
+    private int shownAttached = -1;
+    private int shownClicks = -1;
+    private int pendingAttached;
+    private int pendingClicks;
+    private boolean updateScheduled = false;
+    private long lastNotifyTime = 0;
+
+    // Counters to compare status changes with notify calls.
+    private long numStatusChanges = 0;
+    private long numNotifyCalls = 0;
+
+    FloatingViewNotificationUpdater(NotificationManager notificationManager, int notificationId,
+                                    StatusFormatter formatter) {
+        this.notificationManager = notificationManager;
+        this.notificationId = notificationId;
+        this.formatter = formatter;
+    }
+
+    /**
+     * Called once the notification has been posted with startForeground.
+     *
+     * @param builder Builder used to post the notification, reused for our updates.
+     */
+    void onShown(NotificationCompat.Builder builder, int numAttached, int numClicks) {
+        this.builder = builder;
+        showing = true;
+        shownAttached = numAttached;
+        shownClicks = numClicks;
+        lastNotifyTime = SystemClock.uptimeMillis();
+    }
+
+    void onDismissed() {
+        showing = false;
+        builder = null;
+        if (updateScheduled) {
+            handler.removeCallbacks(updateRunnable);
+            updateScheduled = false;
+        }
+    }
+
+    /** Request the notification shows this status, as soon as our rate limit allows. */
+    void setStatus(int numAttached, int numClicks) {
+        numStatusChanges++;
+        pendingAttached = numAttached;
+        pendingClicks = numClicks;
+        if (!showing || updateScheduled) {
+            // Either there is nothing to update or the scheduled update will pick this up.
+            return;
+        }
+        if (numAttached == shownAttached && numClicks == shownClicks) {
+            return;
+        }
+
+        updateScheduled = true;
+        long delay = Math.max(0, lastNotifyTime + MIN_UPDATE_INTERVAL_MS
+                - SystemClock.uptimeMillis());
+        handler.postDelayed(updateRunnable, delay);
+    }
+
+    long getNumStatusChanges() {
+        return numStatusChanges;
+    }
+
+    long getNumNotifyCalls() {
+        return numNotifyCalls;
+    }
+
+    boolean isShowing() {
+        return showing;
+    }
+
+    private final Runnable updateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            updateScheduled = false;
+            if (!showing || (pendingAttached == shownAttached && pendingClicks == shownClicks)) {
+                // Changes have cancelled each other out.
+                return;
+            }
+
+            shownAttached = pendingAttached;
+            shownClicks = pendingClicks;
+            builder.setContentText(formatter.formatStatus(shownAttached, shownClicks));
+            // Only alert the user the first time the notification is shown.
+            builder.setOnlyAlertOnce(true);
+            notificationManager.notify(notificationId, builder.build());
+            lastNotifyTime = SystemClock.uptimeMillis();
+            numNotifyCalls++;
+        }
+    };
+}
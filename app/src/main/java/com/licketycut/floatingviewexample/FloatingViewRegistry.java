@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Floating views known to the floating view service, held weakly so a floating view
+ * its owner has dropped, along with its view hierarchy and context, can be collected.
+ * Attached floating views are also held strongly, their windows must stay managed
+ * until they are detached. Collected entries are expunged from a reference queue.
+ * Must only be used from the main thread, and not modified while being iterated.
+ */
+class FloatingViewRegistry implements Iterable<FloatingView> {
+
+    private final ArrayList<Entry> entries = new ArrayList<>();
+    private final ReferenceQueue<FloatingView> queue = new ReferenceQueue<>();
+
+    // Number of entries expunged after their floating view was collected, for diagnostics.
+    private int numCollected = 0;
+
+    private static final class Entry extends WeakReference<FloatingView> {
+        // Set while our floating view is attached.
+        FloatingView pinned;
+
+        Entry(FloatingView floatingView, ReferenceQueue<FloatingView> queue) {
+            super(floatingView, queue);
+        }
+
+        /** Hold our floating view strongly only while it is attached. */
+        void updatePin(FloatingView floatingView) {
+            pinned = floatingView.isAttached() ? floatingView : null;
+        }
+    }
+
+    /** Add a floating view if we don't already have it, or update its pin if we do. */
+    void add(FloatingView floatingView) {
+        expunge();
+        Entry entry = find(floatingView);
+        if (entry == null) {
+            entry = new Entry(floatingView, queue);
+            entries.add(entry);
+        }
+        entry.updatePin(floatingView);
+    }
+
+    boolean remove(FloatingView floatingView) {
+        expunge();
+        Entry entry = find(floatingView);
+        if (entry != null) {
+            entries.remove(entry);
+            entry.clear();
+            return true;
+        }
+        return false;
+    }
+
+    /** Remove every floating view which isn't attached, returning how many were removed. */
+    int removeDetached() {
+        expunge();
+        int removed = 0;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            FloatingView floatingView = entries.get(i).get();
+            if (floatingView == null || !floatingView.isAttached()) {
+                entries.remove(i).clear();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    int size() {
+        expunge();
+        return entries.size();
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int getNumCollected() {
+        return numCollected;
+    }
+
+    /** Drop the entries of floating views which have been collected. */
+    private void expunge() {
+        Reference<? extends FloatingView> reference;
+        while ((reference = queue.poll()) != null) {
+            if (entries.remove(reference)) {
+                numCollected++;
+            }
+        }
+    }
+
+    private Entry find(FloatingView floatingView) {
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.get() == floatingView) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Iterate over floating views which haven't been collected.
+     * Pins are brought up to date as we go, so detached floating views are released.
+     */
+    @Override
+    public Iterator<FloatingView> iterator() {
+        expunge();
+        return new Iterator<FloatingView>() {
+            private int index = 0;
+            private FloatingView next = advance();
+
+            private FloatingView advance() {
+                while (index < entries.size()) {
+                    Entry entry = entries.get(index++);
+                    FloatingView floatingView = entry.get();
+                    if (floatingView != null) {
+                        entry.updatePin(floatingView);
+                        return floatingView;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public FloatingView next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                FloatingView floatingView = next;
+                next = advance();
+                return floatingView;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -16,21 +16,37 @@
 
 package com.licketycut.floatingviewexample;
 
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
+import android.content.ComponentCallbacks2;
 import android.content.Intent;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Binder;
 import android.os.Build;
 import android.os.IBinder;
 import android.support.v4.app.NotificationCompat;
+import android.support.v4.content.ContextCompat;
 import android.support.v4.content.LocalBroadcastManager;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+import android.view.Choreographer;
 
+import com.licketycut.floatingviewexample.floatingviews.FloatingBubbleView;
+import com.licketycut.floatingviewexample.floatingviews.FloatingButtonView;
+import com.licketycut.floatingviewexample.floatingviews.FloatingInfoView;
+import com.licketycut.floatingviewexample.utils.LatencyHistogram;
+import com.licketycut.floatingviewexample.utils.PrecomputedTextCache;
+import com.licketycut.floatingviewexample.utils.TimerWheel;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.List;
 
 /** Service used to manage {@link FloatingView}s. */
 public class FloatingViewService extends Service {
@@ -42,51 +58,514 @@ public class FloatingViewService extends Service {
     // Binder given to clients.
     private final IBinder binder = new LocalBinder();
 
-    // We will keep a list of the floating views which we are attached to.
-    private final ArrayList<FloatingView> floatingViews =new ArrayList<>();
+    // We will keep a registry of the floating views which we are attached to,
+    // held weakly unless attached so we never keep a dropped floating view alive.
+    private final FloatingViewRegistry floatingViews =new FloatingViewRegistry();
+
+    // Maximum time we will spend reading our snapshot and constructing floating views
+    // after the os restarts us. They attach once they have bound to us, which comes later
+    // and isn't covered by the budget, see restoreToAttachLatency.
+    static final long RESTORE_BUDGET_MS =250;
+
+    // Snapshot of our attached floating views, used to restore them if we are restarted.
+    private FloatingViewSnapshot snapshot;
 
     private boolean notificationShowing =false;
+    // Whether we have been started as well as bound, until we stop ourselves.
+    private boolean started =false;
+    // Keeps our foreground notification showing live status without flooding the system.
+    private FloatingViewNotificationUpdater notificationUpdater;
+    // Number of floating view clicks we have broadcast, shown in our notification.
+    private int numClicks =0;
+    // Decoded large icon for our foreground notification, released when memory is low.
+    private Bitmap notificationLargeIcon;
+
+    // Eviction modes used when the attached view budget is exceeded.
+    public static final int EVICT_DETACH =0;
+    public static final int EVICT_COLLAPSE =1;
+
+    // Budget for attached floating views, zero means unlimited.
+    private int maxAttachedViews =0;
+    private long maxAttachedBytes =0;
+    private int evictionMode =EVICT_DETACH;
+    private OnFloatingViewEvictedListener onFloatingViewEvictedListener;
+
+    // Eviction metrics.
+    private int numDetachEvictions =0;
+    private int numCollapseEvictions =0;
+    private long evictedBytes =0;
+
+    // Whether a reflow of our floating views is waiting for the next frame.
+    private boolean reflowPosted =false;
+    // Reflow metrics.
+    private int numReflows =0;
+    private long numReflowWindowUpdates =0;
+
+    // Batch metrics.
+    private int numBatches =0;
+    private int numBatchRollbacks =0;
+
+    // Always on counters and latencies reported by dump.
+    private int numSwipes =0;
+    private final LatencyHistogram broadcastLatency =new LatencyHistogram();
+    private final LatencyHistogram notificationLatency =new LatencyHistogram();
+    // Time from beginning a restore until each restored floating view was attached.
+    private final LatencyHistogram restoreToAttachLatency =new LatencyHistogram();
+
+    // System trace section names, constant so tracing never allocates.
+    private static final String TRACE_NOTIFICATION = "FloatingViewService.foregroundNotification";
+    private static final String TRACE_BATCH = "FloatingViewService.applyBatch";
 
     protected void addFloatingView(FloatingView floatingView){
         floatingViews.add(floatingView);
     }
 
+    /** Forget a floating view which is unbinding, unless it is still attached. */
+    void releaseFloatingView(FloatingView floatingView){
+        if(!floatingView.isAttached()){
+            floatingViews.remove(floatingView);
+        }
+    }
+
     protected void removeFloatingView(FloatingView floatingView){
         floatingViews.remove(floatingView);
+        snapshot.remove(floatingView);
+        onFloatingViewRemoved(floatingView);
+        updateNotificationStatus();
         // If this is the last FloatingView attached
         if(floatingViews.size() ==0){
             dismissForegroundNotification();
         }
     }
 
-    /** Detach any attached floating views. */
+    /**
+     * Called once a floating view has been detached and forgotten, however it was detached.
+     * Subclasses override this to drop their own references to it.
+     */
+    protected void onFloatingViewRemoved(FloatingView floatingView){
+    }
+
+    /**
+     * Set a budget for attached floating views. When it is exceeded
+     * the least recently interacted floating views are evicted.
+     *
+     * @param maxViews      Maximum number of attached windows, zero for unlimited.
+     * @param maxBytes      Maximum estimated bytes pinned by attached windows, zero for unlimited.
+     * @param evictionMode  {@link #EVICT_DETACH} or {@link #EVICT_COLLAPSE}.
+     */
+    public void setAttachedViewBudget(int maxViews, long maxBytes, int evictionMode){
+        this.maxAttachedViews = maxViews;
+        this.maxAttachedBytes = maxBytes;
+        this.evictionMode = evictionMode;
+        enforceAttachedViewBudget(null);
+    }
+
+    public void setOnFloatingViewEvictedListener(OnFloatingViewEvictedListener listener){
+        this.onFloatingViewEvictedListener = listener;
+    }
+
+    public int getNumDetachEvictions(){
+        return numDetachEvictions;
+    }
+
+    public int getNumCollapseEvictions(){
+        return numCollapseEvictions;
+    }
+
+    public long getEvictedBytes(){
+        return evictedBytes;
+    }
+
+    /** Number of floating views we still reference, attached or not. */
+    int getNumFloatingViews(){
+        return floatingViews.size();
+    }
+
+    /** Number of floating views we forgot because they were collected. */
+    int getNumCollectedFloatingViews(){
+        return floatingViews.getNumCollected();
+    }
+
+    /** Whether our notification large icon is decoded, it is dropped when memory is low. */
+    boolean isNotificationLargeIconCached(){
+        return notificationLargeIcon != null;
+    }
+
+    /** Called by a floating view once it has been attached to the window manager. */
+    void onFloatingViewAttached(FloatingView floatingView){
+        long restoreStart = floatingView.getRestoreStartNanos();
+        if(restoreStart !=0){
+            restoreToAttachLatency.record(System.nanoTime() - restoreStart);
+            floatingView.setRestoreStartNanos(0);
+        }
+        addFloatingView(floatingView);
+        enforceAttachedViewBudget(floatingView);
+        if(floatingView.isAttached()) {
+            snapshot.put(floatingView);
+        }
+        updateNotificationStatus();
+    }
+
+    /** Called by a floating view once it has been hidden or shown again. */
+    void onFloatingViewVisibilityChanged(FloatingView floatingView){
+        if(!floatingView.isHidden()){
+            enforceAttachedViewBudget(floatingView);
+        }
+        updateNotificationStatus();
+    }
+
+    /** Called by a floating view when its position, size or content has changed. */
+    void onFloatingViewChanged(FloatingView floatingView){
+        snapshot.put(floatingView);
+    }
+
+    /**
+     * Evict the least recently interacted floating views until we are within budget.
+     *
+     * @param exclude   Floating view which has just been attached and should be kept.
+     */
+    private void enforceAttachedViewBudget(FloatingView exclude){
+        if(maxAttachedViews <=0 && maxAttachedBytes <=0){
+            return;
+        }
+
+        while(true){
+            int attachedViews =0;
+            long attachedBytes =0;
+            for(FloatingView floatingView: floatingViews){
+                // Hidden floating views are kept warm by their owner, so only showing ones count.
+                if(floatingView.isAttached() && !floatingView.isHidden()){
+                    attachedViews++;
+                    attachedBytes += floatingView.getBudgetedBytes();
+                }
+            }
+
+            boolean overViews = maxAttachedViews >0 && attachedViews > maxAttachedViews;
+            boolean overBytes = maxAttachedBytes >0 && attachedBytes > maxAttachedBytes;
+            if(!overViews && !overBytes){
+                return;
+            }
+
+            // Collapsing only frees memory, if we have too many windows we have to detach.
+            boolean collapse =false;
+            FloatingView evicted =null;
+            if(evictionMode == EVICT_COLLAPSE && !overViews){
+                evicted = getLeastRecentlyInteracted(exclude, true);
+                collapse = evicted !=null;
+            }
+            if(evicted == null){
+                // Collapsing can't free anything more, so fall back to detaching.
+                evicted = getLeastRecentlyInteracted(exclude, false);
+            }
+            if(evicted == null){
+                // Nothing left which we are allowed to evict.
+                return;
+            }
+
+            long bytes = evicted.getBudgetedBytes();
+            if(collapse && evicted.collapse()){
+                bytes -= evicted.getBudgetedBytes();
+                numCollapseEvictions++;
+            } else {
+                // This removes the floating view from our array list.
+                evicted.detachFromWindow(false);
+                collapse = false;
+                numDetachEvictions++;
+            }
+            evictedBytes += bytes;
+            if(Log.isLoggable(TAG, Log.DEBUG)){
+                Log.d(TAG, "Evicted floating view, collapsed: "+collapse+" bytes: "+bytes);
+            }
+
+            if(onFloatingViewEvictedListener !=null){
+                onFloatingViewEvictedListener.onFloatingViewEvicted(evicted, collapse);
+            }
+        }
+    }
+
+    /**
+     * Find the attached floating view which the user has touched least recently.
+     *
+     * @param onlyShrinkable    Only consider floating views which collapsing would shrink.
+     */
+    private FloatingView getLeastRecentlyInteracted(FloatingView exclude, boolean onlyShrinkable){
+        FloatingView leastRecent =null;
+        for(FloatingView floatingView: floatingViews){
+            if(floatingView == exclude || !floatingView.isAttached() || floatingView.isHidden()
+                    || (onlyShrinkable && !floatingView.canCollapseSmaller())){
+                continue;
+            }
+            if(leastRecent == null || floatingView.getLastInteractionTime()
+                    < leastRecent.getLastInteractionTime()){
+                leastRecent = floatingView;
+            }
+        }
+        return leastRecent;
+    }
+
+    /** Callback to be notified when a floating view is evicted to stay within budget. */
+    public interface OnFloatingViewEvictedListener {
+
+        void onFloatingViewEvicted(FloatingView floatingView, boolean collapsed);
+    }
+
+    /**
+     * Shed resources according to the trim level.
+     * Any trim releases detached floating views which we still reference,
+     * running low or being in the background also drops decoded bitmaps and cached text,
+     * critical levels collapse attached floating views to their minimal form.
+     * UI hidden only means our activity has gone, so our caches are still worth keeping.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        int releasedViews = releaseDetachedFloatingViews();
+
+        boolean releaseCaches = FloatingView.isReleaseCachesLevel(level);
+        if (releaseCaches) {
+            notificationLargeIcon = null;
+            PrecomputedTextCache.getInstance().clear();
+        }
+
+        int collapsedViews = 0;
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            for (FloatingView floatingView : floatingViews) {
+                if (floatingView.isAttached() && !floatingView.isCollapsed()
+                        && floatingView.collapse()) {
+                    collapsedViews++;
+                }
+            }
+        }
+
+        // Let each floating view drop its own cached resources.
+        for (FloatingView floatingView : floatingViews) {
+            floatingView.onTrimMemory(level);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Trim memory level: " + level + " released views: " + releasedViews
+                    + " released caches: " + releaseCaches
+                    + " collapsed views: " + collapsedViews);
+        }
+    }
+
+    /**
+     * The display may have rotated or resized, so move every attached floating view
+     * to the same relative position in a single pass on the next frame.
+     */
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // We may hear about the change before the display bounds do.
+        FloatingViewDisplayBounds.getInstance(this).refresh();
+        if (!reflowPosted) {
+            reflowPosted = true;
+            Choreographer.getInstance().postFrameCallback(reflowFrameCallback);
+        }
+    }
+
+    private final Choreographer.FrameCallback reflowFrameCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            reflowPosted = false;
+            numReflows++;
+            // Rotation moves the display cutout, read it again before we move anything.
+            FloatingViewDisplayBounds displayBounds =
+                    FloatingViewDisplayBounds.getInstance(FloatingViewService.this);
+            for (FloatingView floatingView : floatingViews) {
+                if (floatingView.isAttached()) {
+                    displayBounds.refreshCutout(floatingView.getRootView());
+                    break;
+                }
+            }
+            int moved = 0;
+            for (FloatingView floatingView : floatingViews) {
+                // Each floating view which moves costs exactly one window update.
+                if (floatingView.reflowPosition()) {
+                    floatingView.notifySnapshotChanged();
+                    moved++;
+                }
+            }
+            numReflowWindowUpdates += moved;
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Reflowed " + moved + " of " + floatingViews.size()
+                        + " floating views");
+            }
+        }
+    };
+
+    public int getNumReflows() {
+        return numReflows;
+    }
+
+    public long getNumReflowWindowUpdates() {
+        return numReflowWindowUpdates;
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    /** Drop our references to floating views which are no longer attached. */
+    private int releaseDetachedFloatingViews() {
+        return floatingViews.removeDetached();
+    }
+
+    /**
+     * Detach any attached floating views in a single batch,
+     * so the foreground notification is only removed once.
+     */
     protected void detachAllFloatingViews(){
+        Batch batch = beginBatch();
         for(FloatingView floatingView: floatingViews){
-            if(floatingView !=null){
-                if(floatingView.isAttached()){
-                    // This method removes the floating view from our array list
-                    // after detaching it from the display.
-                    // When the last one is detached, the foreground notification is removed.
-                    floatingView.detachFromWindow(false);
+            if(floatingView !=null && floatingView.isAttached()){
+                batch.detach(floatingView);
+            }
+        }
+        batch.commit(this, false);
+    }
+
+    /** Begin a batch of floating view attaches and detaches, applied together on commit. */
+    public Batch beginBatch(){
+        return new Batch();
+    }
+
+    public int getNumBatches(){
+        return numBatches;
+    }
+
+    public int getNumBatchRollbacks(){
+        return numBatchRollbacks;
+    }
+
+    /**
+     * Set of floating view attaches and detaches applied together in a single pass,
+     * so the window manager picks them all up on the same frame. Permission is checked
+     * and the foreground notification changed at most once per batch.
+     * If any attach fails, the attaches already made are rolled back and nothing is detached.
+     */
+    public final class Batch {
+        private final ArrayList<FloatingView> attaches =new ArrayList<>();
+        private final ArrayList<FloatingView> detaches =new ArrayList<>();
+
+        private Batch(){
+        }
+
+        public Batch attach(FloatingView floatingView){
+            attaches.add(floatingView);
+            return this;
+        }
+
+        public Batch detach(FloatingView floatingView){
+            detaches.add(floatingView);
+            return this;
+        }
+
+        /**
+         * Apply the batch, must be called from the main thread.
+         *
+         * @param context           Context used to check permission.
+         * @param startForeground   Start the foreground notification if anything is attached.
+         * @return                  False if nothing was changed because an attach failed.
+         */
+        public boolean commit(Context context, boolean startForeground){
+            TraceCompat.beginSection(TRACE_BATCH);
+            try {
+                return applyBatch(this, context, startForeground);
+            } finally {
+                TraceCompat.endSection();
+            }
+        }
+    }
+
+    private boolean applyBatch(Batch batch, Context context, boolean startForeground){
+        numBatches++;
+        if(!batch.attaches.isEmpty() && !FloatingView.checkDrawOverlayPermission(context)){
+            Log.w(TAG, "Attempt to attach FloatingView batch without DrawOverlay permission");
+            numBatchRollbacks++;
+            return false;
+        }
+
+        // Attach everything first, so a failure leaves our floating views as they were.
+        int[] previousStates =new int[batch.attaches.size()];
+        for(int i =0; i < batch.attaches.size(); i++){
+            FloatingView floatingView = batch.attaches.get(i);
+            previousStates[i] = floatingView.isAttached()
+                    ? FloatingView.STATE_ATTACHED : floatingView.attachInBatch();
+            if(previousStates[i] <0){
+                for(int j = i -1; j >=0; j--){
+                    if(previousStates[j] != FloatingView.STATE_ATTACHED){
+                        batch.attaches.get(j).rollbackAttachInBatch(previousStates[j]);
+                    }
                 }
+                Log.w(TAG, "Rolled back FloatingView batch, attach " + i + " failed");
+                numBatchRollbacks++;
+                return false;
+            }
+        }
+
+        for(FloatingView floatingView: batch.detaches){
+            if(floatingView.removeFromWindow()){
+                floatingViews.remove(floatingView);
+                snapshot.remove(floatingView);
+                onFloatingViewRemoved(floatingView);
+            }
+        }
+
+        for(FloatingView floatingView: batch.attaches){
+            addFloatingView(floatingView);
+            snapshot.put(floatingView);
+        }
+        if(!batch.attaches.isEmpty()){
+            enforceAttachedViewBudget(null);
+        }
+
+        // Change our foreground state once for the whole batch, hidden windows still need it.
+        int numAttached = getNumAttachedFloatingViews() + getNumHiddenFloatingViews();
+        if(numAttached ==0){
+            if(notificationShowing){
+                dismissForegroundNotification();
             }
+        } else if(startForeground && !notificationShowing){
+            startForeground(context);
         }
+        updateNotificationStatus();
+        return true;
     }
 
     /** Send a broadcast to notify that a floating view root view has been clicked. */
     protected void broadcastOnClick(String clickAction){
-        LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(clickAction));
+        broadcastAction(clickAction);
+        numClicks++;
+        updateNotificationStatus();
+    }
+
+    /** Send a broadcast to notify that the user has exited from a floating view. */
+    protected void broadcastOnExit(String exitAction){
+        broadcastAction(exitAction);
+    }
+
+    /** Send a floating view action to our clients, which aren't necessarily clicks. */
+    protected void broadcastAction(String action){
+        long start = System.nanoTime();
+        LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(action));
+        broadcastLatency.record(System.nanoTime() - start);
     }
 
     /** Send a broadcast to notify that a floating view root view has been swiped. */
     protected void broadcastOnSwipe(String swipeAction){
-        LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(swipeAction));
+        broadcastAction(swipeAction);
+        numSwipes++;
     }
 
     /**
      * Class used for the client binder.  Because we know this service always
      * runs in the same process as its clients, we don't need to be a messenger,
      * instead we will use a local broadcast manager.
+     * When floating views are hosted in their own process see {@link FloatingOverlayHostService}.
      */
     class LocalBinder extends Binder {
         FloatingViewService getService() {
@@ -100,10 +579,83 @@ public class FloatingViewService extends Service {
         return binder;
     }
 
+    /**
+     * Print our state for adb shell dumpsys activity service, the os calls us on
+     * the main thread. Everything printed comes from counters we already maintain.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println(getClass().getSimpleName() + ":");
+        // The system caches our binder, so binds are counted by each floating view.
+        pw.println("  binds=" + FloatingView.getNumBinds()
+                + " unbinds=" + FloatingView.getNumUnbinds()
+                + " floatingViews=" + floatingViews.size()
+                + " attached=" + getNumAttachedFloatingViews()
+                + " hidden=" + getNumHiddenFloatingViews()
+                + " snapshotRecords=" + snapshot.size()
+                + " collected=" + floatingViews.getNumCollected()
+                + " receivers=" + FloatingView.getNumRegisteredReceivers());
+        for (FloatingView floatingView : floatingViews) {
+            floatingView.dump(pw, "    ");
+        }
+
+        pw.println("  Broadcasts: clicks=" + numClicks + " swipes=" + numSwipes);
+        pw.println("  Notification: showing=" + notificationShowing
+                + " statusChanges=" + notificationUpdater.getNumStatusChanges()
+                + " notifyCalls=" + notificationUpdater.getNumNotifyCalls()
+                + " largeIconCached=" + (notificationLargeIcon != null));
+        pw.println("  Budget: maxViews=" + maxAttachedViews + " maxBytes=" + maxAttachedBytes
+                + " mode=" + evictionMode + " detachEvictions=" + numDetachEvictions
+                + " collapseEvictions=" + numCollapseEvictions + " evictedBytes=" + evictedBytes);
+        pw.println("  Window updates: reflows=" + numReflows
+                + " reflowUpdates=" + numReflowWindowUpdates
+                + " animatorUpdates=" + FloatingViewAnimator.getInstance().getNumWindowUpdates()
+                + " animatorFrames=" + FloatingViewAnimator.getInstance().getNumFrames()
+                + " batches=" + numBatches + " batchRollbacks=" + numBatchRollbacks);
+        pw.println("  Timer wheel: scheduled=" + TimerWheel.getInstance().getNumScheduled()
+                + " wakeups=" + TimerWheel.getInstance().getNumWakeups());
+
+        pw.println("  Latency:");
+        FloatingView.getAttachLatency().dump(pw, "    attach");
+        FloatingView.getWindowUpdateLatency().dump(pw, "    windowUpdate");
+        FloatingView.getAttachToFrameLatency().dump(pw, "    attachToFrame");
+        FloatingView.getShowToFrameLatency().dump(pw, "    showToFrame");
+        broadcastLatency.dump(pw, "    broadcast");
+        notificationLatency.dump(pw, "    notification");
+        restoreToAttachLatency.dump(pw, "    restoreToAttach");
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Each service class keeps its own snapshot since they may run in different processes.
+        snapshot = new FloatingViewSnapshot(this, getClass().getSimpleName() + ".snapshot");
+        notificationUpdater = new FloatingViewNotificationUpdater(
+                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE),
+                getResources().getInteger(R.integer.ongoing_notification_id),
+                new FloatingViewNotificationUpdater.StatusFormatter() {
+                    @Override
+                    public CharSequence formatStatus(int numAttached, int numClicks) {
+                        return getString(R.string.notification_status, numAttached, numClicks);
+                    }
+                });
+        FloatingViewSnapshot.registerType(FloatingButtonView.SNAPSHOT_TYPE,
+                FloatingButtonView.SNAPSHOT_RESTORER);
+        FloatingViewSnapshot.registerType(FloatingInfoView.SNAPSHOT_TYPE,
+                FloatingInfoView.SNAPSHOT_RESTORER);
+        FloatingViewSnapshot.registerType(FloatingBubbleView.SNAPSHOT_TYPE,
+                FloatingBubbleView.SNAPSHOT_RESTORER);
+    }
+
     /** Handle os call to start the floating view service. */
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         super.onStartCommand(intent, flags, startId);
+        started =true;
+        if (intent == null && floatingViews.isEmpty()) {
+            // The os has restarted us after stopping us, so rebuild our floating views.
+            restoreFloatingViews();
+        }
         // If memory becomes low and the floating view service is stopped,
         // tell os to recreate the service when memory is available again.
         return START_STICKY;
@@ -116,11 +668,31 @@ public class FloatingViewService extends Service {
         onDestroy();
     }
 
+    /** Rebuild and attach the floating views from our snapshot within our time budget. */
+    private void restoreFloatingViews() {
+        Context context = getApplicationContext();
+        long start = System.nanoTime();
+        // Floating views we restore bind to us, whichever subclass we are.
+        List<FloatingView> restored = snapshot.restore(context, getClass(), RESTORE_BUDGET_MS);
+        for (FloatingView floatingView : restored) {
+            // The floating views attach once they have bound to us.
+            floatingView.setRestoreStartNanos(start);
+            floatingView.attachToWindow(context, true);
+        }
+        if (restored.isEmpty()) {
+            // There was nothing to restore, so we don't need to stay started.
+            stopSelf();
+            started =false;
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
 
         detachAllFloatingViews();
+        // Our final write happens on the snapshot's own thread rather than blocking ours.
+        snapshot.close();
 
         // Send a broadcast to notify that floating view service is destroyed.
         LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(
@@ -133,21 +705,70 @@ public class FloatingViewService extends Service {
 
     /** Start our foreground notification. */
     public void startForeground(Context context) {
-        startForeground(context.getResources().getInteger(R.integer.ongoing_notification_id), getForegroundNotification(context));
+        // Make sure we are started as well as bound, so the os restarts us if it stops us.
+        // We only need starting once, and on Oreo and later we may be in the background,
+        // where we must be started as a foreground service, as we are about to become.
+        if(!started){
+            started =true;
+            ContextCompat.startForegroundService(this, new Intent(this, getClass()));
+        }
+        TraceCompat.beginSection(TRACE_NOTIFICATION);
+        long start = System.nanoTime();
+        NotificationCompat.Builder builder;
+        try {
+            builder = getForegroundNotificationBuilder(context);
+            startForeground(context.getResources().getInteger(R.integer.ongoing_notification_id), builder.build());
+        } finally {
+            TraceCompat.endSection();
+        }
+        notificationLatency.record(System.nanoTime() - start);
         notificationShowing = true;
+        notificationUpdater.onShown(builder, getNumAttachedFloatingViews(), numClicks);
+    }
+
+    /** Let our notification know the number of attached views or clicks may have changed. */
+    private void updateNotificationStatus() {
+        if (notificationUpdater != null) {
+            notificationUpdater.setStatus(getNumAttachedFloatingViews(), numClicks);
+        }
+    }
+
+    /** Number of attached floating views which are showing, hidden ones aren't counted. */
+    private int getNumAttachedFloatingViews() {
+        int numAttached = 0;
+        for (FloatingView floatingView : floatingViews) {
+            if (floatingView.isAttached() && !floatingView.isHidden()) {
+                numAttached++;
+            }
+        }
+        return numAttached;
+    }
+
+    private int getNumHiddenFloatingViews() {
+        int numHidden = 0;
+        for (FloatingView floatingView : floatingViews) {
+            if (floatingView.isAttached() && floatingView.isHidden()) {
+                numHidden++;
+            }
+        }
+        return numHidden;
     }
 
     /** Stop our foreground notification. */
     public void dismissForegroundNotification() {
         stopForeground(true);
         notificationShowing = false;
+        notificationUpdater.onDismissed();
+        // We no longer need to be restarted, we will live on for as long as we are bound.
+        stopSelf();
+        started =false;
     }
 
     /**
-     * Build a foreground notification which allows the user to return to the main activity
-     * and close the current floating view.
+     * Build a foreground notification showing our status which allows the user
+     * to return to the main activity and close the current floating view.
      */
-    private Notification getForegroundNotification(Context context) {
+    private NotificationCompat.Builder getForegroundNotificationBuilder(Context context) {
         NotificationCompat.Builder builder = new NotificationCompat.Builder(context, getString(R.string.MAIN_CHANNEL_ID));
         // If the device is using Oreo or above then we need to create a notification channel.
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O){
@@ -161,10 +782,14 @@ public class FloatingViewService extends Service {
         }
         // Populate our notification.
         builder.setSmallIcon(R.mipmap.notify_icon);
-        builder.setLargeIcon(BitmapFactory.decodeResource(getResources(), R.mipmap.icon));
+        if (notificationLargeIcon == null) {
+            notificationLargeIcon = BitmapFactory.decodeResource(getResources(), R.mipmap.icon);
+        }
+        builder.setLargeIcon(notificationLargeIcon);
         builder.setTicker(getString(R.string.app_name));
         builder.setContentTitle(getString(R.string.app_name));
-        builder.setContentText(getString(R.string.notification_content));
+        builder.setContentText(getString(R.string.notification_status,
+                getNumAttachedFloatingViews(), numClicks));
         // Create an intent which restarts the main activity including a flag to indicate
         // that it came from the notification.
         Intent notificationIntent = new Intent(context, MainActivity.class);
@@ -175,6 +800,6 @@ public class FloatingViewService extends Service {
                 0, notificationIntent, PendingIntent.FLAG_UPDATE_CURRENT);
         builder.setContentIntent(pendingIntent);
         builder.setAutoCancel(false);
-        return builder.build();
+        return builder;
     }
 }
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compact versioned binary snapshot of the attached {@link FloatingView}s,
+ * used by the {@link FloatingViewService} to rebuild them after the os restarts it.
+ * Each floating view's record is encoded when it changes and writes to disk are coalesced.
+ */
+class FloatingViewSnapshot {
+    private static final String TAG = "FloatingViewSnapshot";
+
+    private static final int MAGIC = 0x46565331;
+    // Version 2 length prefixes content strings rather than using modified UTF-8.
+    // Version 3 adds the normalized position to the layout.
+    private static final int VERSION = 3;
+
+    // Delay used to coalesce changes into a single write.
+    private static final long WRITE_DELAY_MS = 500;
+
+    // Registered restorers keyed by snapshot type.
+    private static final Map<String, FloatingView.SnapshotRestorer> restorers = new HashMap<>();
+
+    private final AtomicFile file;
+    // Encoded records of each attached floating view, keyed by floating view id.
+    private final LinkedHashMap<Integer, byte[]> records = new LinkedHashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private boolean writeScheduled = false;
+    // Once closed we no longer accept writes and our writer thread has been shut down.
+    private boolean closed = false;
+
+    FloatingViewSnapshot(Context context, String fileName) {
+        file = new AtomicFile(new File(context.getFilesDir(), fileName));
+    }
+
+    /** Register a restorer so floating views of this type can be rebuilt. */
+    static void registerType(String type, FloatingView.SnapshotRestorer restorer) {
+        synchronized (restorers) {
+            restorers.put(type, restorer);
+        }
+    }
+
+    /** Encode a floating view's current state, replacing any previous record. */
+    void put(FloatingView floatingView) {
+        String type = floatingView.getSnapshotType();
+        if (type == null) {
+            // This floating view doesn't support being restored.
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeUTF(type);
+            floatingView.writeSnapshotLayout(out);
+
+            // Length prefix the content so records we can't restore can be skipped.
+            ByteArrayOutputStream contentBytes = new ByteArrayOutputStream(64);
+            floatingView.writeSnapshotContent(new DataOutputStream(contentBytes));
+            out.writeInt(contentBytes.size());
+            contentBytes.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to encode floating view : " + e.getMessage());
+            return;
+        }
+
+        records.put(floatingView.getFloatingViewId(), bytes.toByteArray());
+        scheduleWrite();
+    }
+
+    void remove(FloatingView floatingView) {
+        if (records.remove(floatingView.getFloatingViewId()) != null) {
+            scheduleWrite();
+        }
+    }
+
+    int size() {
+        return records.size();
+    }
+
+    private void scheduleWrite() {
+        if (!writeScheduled && !closed) {
+            writeScheduled = true;
+            handler.postDelayed(writeRunnable, WRITE_DELAY_MS);
+        }
+    }
+
+    /**
+     * Write any pending changes now rather than waiting, and wait for them to reach disk
+     * since we are usually about to be destroyed.
+     */
+    void flush() {
+        if (writeScheduled) {
+            handler.removeCallbacks(writeRunnable);
+            try {
+                submitWrite().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Unable to flush snapshot : " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write any pending changes and shut down our writer thread once they are written.
+     * We don't wait for the write, so this can be called from the main thread as we are
+     * destroyed, and the snapshot can't be written to afterwards.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (writeScheduled) {
+            handler.removeCallbacks(writeRunnable);
+            submitWrite();
+        }
+        executor.shutdown();
+    }
+
+    private final Runnable writeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            submitWrite();
+        }
+    };
+
+    private Future<?> submitWrite() {
+        writeScheduled = false;
+        // Records are immutable once encoded, so we only need to copy the list.
+        final List<byte[]> snapshot = new ArrayList<>(records.values());
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                write(snapshot);
+            }
+        });
+    }
+
+    private void write(List<byte[]> snapshot) {
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (byte[] record : snapshot) {
+                out.writeInt(record.length);
+                out.write(record);
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write snapshot : " + e.getMessage());
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the floating views in our snapshot, giving up once the budget has been spent.
+     *
+     * @param context       Context to create the floating views with.
+     * @param serviceClass  Floating view service the floating views bind to.
+     * @param budgetMs      Maximum time to spend restoring.
+     * @return              The restored floating views.
+     */
+    List<FloatingView> restore(Context context,
+                               Class<? extends FloatingViewService> serviceClass, long budgetMs) {
+        List<FloatingView> restored = new ArrayList<>();
+        long start = SystemClock.elapsedRealtime();
+
+        byte[] data;
+        try {
+            data = file.readFully();
+        } catch (FileNotFoundException e) {
+            return restored;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read snapshot : " + e.getMessage());
+            return restored;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.w(TAG, "Ignoring snapshot with unknown format");
+                return restored;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                if (SystemClock.elapsedRealtime() - start > budgetMs) {
+                    Log.w(TAG, "Restore budget spent, dropped " + (count - i) + " floating views");
+                    break;
+                }
+
+                byte[] record = new byte[in.readInt()];
+                in.readFully(record);
+                FloatingView floatingView = restoreRecord(context, serviceClass, record);
+                if (floatingView != null) {
+                    restored.add(floatingView);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Snapshot is truncated : " + e.getMessage());
+        }
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Restored " + restored.size() + " floating views in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+        return restored;
+    }
+
+    private FloatingView restoreRecord(Context context,
+                                       Class<? extends FloatingViewService> serviceClass,
+                                       byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        String type = in.readUTF();
+        FloatingView.SnapshotRestorer restorer;
+        synchronized (restorers) {
+            restorer = restorers.get(type);
+        }
+        if (restorer == null) {
+            Log.w(TAG, "No restorer registered for " + type);
+            return null;
+        }
+
+        int layoutId = in.readInt();
+        int x = in.readInt();
+        int y = in.readInt();
+        int width = in.readInt();
+        int height = in.readInt();
+        int gravity = in.readInt();
+        float normalizedX = in.readFloat();
+        float normalizedY = in.readFloat();
+
+        byte[] content = new byte[in.readInt()];
+        in.readFully(content);
+        FloatingView floatingView;
+        try {
+            floatingView = restorer.restore(context, serviceClass, layoutId,
+                    new DataInputStream(new ByteArrayInputStream(content)));
+            if (floatingView != null) {
+                floatingView.restoreSnapshotLayout(x, y, width, height, gravity,
+                        normalizedX, normalizedY);
+            }
+        } catch (RuntimeException e) {
+            // One bad record shouldn't stop the rest from being restored.
+            Log.w(TAG, "Unable to restore " + type + " : " + e.getMessage());
+            return null;
+        }
+        return floatingView;
+    }
+}
@@ -16,11 +16,14 @@
 
 package com.licketycut.floatingviewexample;
 
+import android.support.v4.os.TraceCompat;
+import android.view.Choreographer;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 
-import android.os.Handler;
+import com.licketycut.floatingviewexample.utils.TimerWheel;
 
 /**
  * Custom {@link View.OnTouchListener  } to process touch events and move a floating view,
@@ -34,12 +37,25 @@ public class FloatingViewTouchListener implements View.OnTouchListener {
     public static final int IGNORE_VERTICAL =0x10;
     public static final int IGNORE_GESTURES =0x100;
     public static final int NO_SNAP_BACK =0x1000;
+    public static final int ALLOW_RESIZE =0x10000;
+    public static final int ALLOW_DISMISS =0x100000;
 
-    // Handler and runnable to detect long presses.
-    private final Handler handler = new Handler();
-    private Runnable longPressHandler;
+    // System trace section names, constant so tracing never allocates.
+    private static final String TRACE_TOUCH = "FloatingViewTouchListener.onTouch";
+    private static final String TRACE_FLING = "FloatingViewTouchListener.onFling";
+
+    // Timeout on the shared timer wheel to detect long presses.
+    private final TimerWheel.Timeout longPressTimeout = new TimerWheel.Timeout() {
+        @Override
+        public void onTimeout() {
+            onLongPress();
+        }
+    };
 
     private final GestureDetector gestureDetector;
+    private ScaleGestureDetector scaleGestureDetector;
+    // Shared drag to dismiss target, null unless ALLOW_DISMISS was requested.
+    private FloatingDismissTarget dismissTarget;
     private final FloatingView floatingView;
 
     // Switches to indicate what we will process.
@@ -81,24 +97,41 @@ public class FloatingViewTouchListener implements View.OnTouchListener {
         if((flags & NO_SNAP_BACK) == NO_SNAP_BACK){
             snapBack = false;
         }
+
+        if((flags & ALLOW_RESIZE) == ALLOW_RESIZE){
+            scaleGestureDetector = new ScaleGestureDetector(
+                    floatingView.getRootView().getContext(), new ScaleListener());
+        }
+
+        if((flags & ALLOW_DISMISS) == ALLOW_DISMISS){
+            dismissTarget = FloatingDismissTarget.getInstance(
+                    floatingView.getRootView().getContext());
+        }
+    }
+
+    /**
+     * Limit the size the user can pinch our floating view to.
+     * @param minWidth  Minimum width in pixels.
+     * @param minHeight Minimum height in pixels.
+     * @param maxWidth  Maximum width in pixels.
+     * @param maxHeight Maximum height in pixels.
+     */
+    public void setResizeLimits(int minWidth, int minHeight, int maxWidth, int maxHeight){
+        this.minWidth = minWidth;
+        this.minHeight = minHeight;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
     }
 
-    /** Start handler for delayed callback to test for long press.*/
+    /** Start timeout for delayed callback to test for long press.*/
     private void startLongPressHandler(){
         // If the user has touched and held for longer than our long press threshold 
         // callback OnLongPress.
-        longPressHandler = new Runnable() {
-            @Override
-            public void run() {
-                onLongPress();
-            }
-        };
-        handler.postDelayed(longPressHandler, LONG_PRESS_ACTION_THRESHOLD);
+        TimerWheel.getInstance().schedule(longPressTimeout, LONG_PRESS_ACTION_THRESHOLD);
     }
 
     private void stopLongPressHandler(){
-        handler.removeCallbacks(longPressHandler);
-        longPressHandler = null;
+        TimerWheel.getInstance().cancel(longPressTimeout);
     }
 
     // We only want to move the view if the user has actually dragged it a bit, not just touched it.
@@ -117,9 +150,50 @@ public class FloatingViewTouchListener implements View.OnTouchListener {
     private static final int CLICK_ACTION_THRESHOLD = 200;
     private static final int LONG_PRESS_ACTION_THRESHOLD = 800;
 
+    // True from the start of a pinch until the user lifts their last finger.
+    private boolean hasResized = false;
+    // Size of the root view when the pinch started and the current scale.
+    private int resizeStartWidth, resizeStartHeight;
+    private float resizeScale = 1f;
+    // Size limits for pinch to resize.
+    private int minWidth = 0;
+    private int minHeight = 0;
+    private int maxWidth = Integer.MAX_VALUE;
+    private int maxHeight = Integer.MAX_VALUE;
+
+    // Screen center of the root view at the start of the drag, used to snap onto the target.
+    private float initCenterX, initCenterY;
+    private final int[] location = new int[2];
+    // True while the user holds our floating view over the dismiss target.
+    private boolean overDismissTarget = false;
+    // Latest position requested while dragging, applied once per frame.
+    private int pendingX, pendingY;
+    private boolean positionFramePosted = false;
 
     @Override
     public boolean onTouch(View v, MotionEvent event) {
+        TraceCompat.beginSection(TRACE_TOUCH);
+        try {
+            return classifyTouch(v, event);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /** Classify a touch event as a click, drag, pinch or gesture and act on it. */
+    private boolean classifyTouch(View v, MotionEvent event) {
+
+        if(scaleGestureDetector != null){
+            scaleGestureDetector.onTouchEvent(event);
+            if(hasResized){
+                // Once the user has pinched, ignore everything else until they let go.
+                if(event.getActionMasked() == MotionEvent.ACTION_UP
+                        || event.getActionMasked() == MotionEvent.ACTION_CANCEL){
+                    hasResized = false;
+                }
+                return true;
+            }
+        }
 
         if(hasMoved){
             // If we have a new event and the view has been moved,
@@ -127,15 +201,22 @@ public class FloatingViewTouchListener implements View.OnTouchListener {
             stopLongPressHandler();
         }
 
-        switch (event.getAction()) {
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
                 // User has started a chain of touch events by touching down.
                 lastTouchDown = System.currentTimeMillis();
+                floatingView.onInteraction();
                 hasMoved = false;
                 initX = floatingView.getLayoutX();
                 initY = floatingView.getLayoutY();
                 initTouchX = event.getRawX();
                 initTouchY = event.getRawY();
+                if(dismissTarget != null){
+                    View rootView = floatingView.getRootView();
+                    rootView.getLocationOnScreen(location);
+                    initCenterX = location[0] + rootView.getWidth() / 2f;
+                    initCenterY = location[1] + rootView.getHeight() / 2f;
+                }
 
                 startLongPressHandler();
 
@@ -145,6 +226,19 @@ public class FloatingViewTouchListener implements View.OnTouchListener {
                 return true;
             case MotionEvent.ACTION_UP:
                 // User has stopped touching.
+                if (hasMoved && dismissTarget != null) {
+                    // Make sure our last requested position has been applied.
+                    flushPendingPosition();
+                    boolean dismissed = overDismissTarget;
+                    endDismissDrag();
+                    if(dismissed){
+                        if(!onDismiss()){
+                            // We weren't dismissed, so return to where the drag started.
+                            floatingView.setLayoutPosition((int) initX, (int) initY);
+                        }
+                        return true;
+                    }
+                }
                 if (hasMoved) {
                     // Process gestures as requested.
                     if(processGestures && !gestureDetector.onTouchEvent(event)) {
@@ -160,6 +254,8 @@ public class FloatingViewTouchListener implements View.OnTouchListener {
                         }
 
                     }
+                    // The user has finished moving us, so our position may need saving.
+                    floatingView.notifySnapshotChanged();
                 } else{
                     // If user has stopped touching before the threshold,
                     // stop the runnable we have scheduled to test for long press.
@@ -185,12 +281,32 @@ public class FloatingViewTouchListener implements View.OnTouchListener {
                     int nextX = (int) (initX + (event.getRawX() - initTouchX));
                     int nextY = (int) (initY + (event.getRawY() - initTouchY));
 
-                    // Set and update the new x and y of our parent floating view layout.
-                    if (processX) {
-                        floatingView.setLayoutX(nextX);
+                    if (dismissTarget != null) {
+                        dismissTarget.show();
+                        boolean over = dismissTarget.hitTest(event.getRawX(), event.getRawY());
+                        if (over) {
+                            // Magnetically snap our center onto the target's center.
+                            nextX = (int) (initX + dismissTarget.getCenterX() - initCenterX);
+                            nextY = (int) (initY + dismissTarget.getCenterY() - initCenterY);
+                        }
+                        if (over != overDismissTarget) {
+                            overDismissTarget = over;
+                            dismissTarget.setHighlighted(over);
+                        }
                     }
-                    if (processY) {
-                        floatingView.setLayoutY(nextY);
+
+                    // Keep within the display ourselves rather than leaving it to the window
+                    // manager, so we never issue an update for a position we can't reach.
+                    int x = processX
+                            ? floatingView.clampLayoutX(nextX) : floatingView.getLayoutX();
+                    int y = processY
+                            ? floatingView.clampLayoutY(nextY) : floatingView.getLayoutY();
+                    if (dismissTarget != null) {
+                        // Coalesce moves so we update our window at most once per frame.
+                        postPosition(x, y);
+                    } else if (x != floatingView.getLayoutX() || y != floatingView.getLayoutY()) {
+                        // Set and update the new x and y of our parent floating view layout.
+                        floatingView.setLayoutPosition(x, y);
                     }
                     if (processGestures) {
                         // Process gestures as requested and finish.
@@ -200,12 +316,110 @@ public class FloatingViewTouchListener implements View.OnTouchListener {
                     return true;
                 }
                 break;
+            case MotionEvent.ACTION_CANCEL:
+                // The drag has been taken from us, leave our floating view where it is.
+                stopLongPressHandler();
+                if (dismissTarget != null) {
+                    flushPendingPosition();
+                    endDismissDrag();
+                }
+                break;
         }
         // Return false if we haven't consumed the event so it propagates to other handlers.
         // Returning true indicates that we've handled it.
         return hasMoved;
     }
 
+    /** Begin methods to coalesce drag updates and manage the dismiss target. */
+    private void postPosition(int x, int y){
+        pendingX = x;
+        pendingY = y;
+        if(!positionFramePosted){
+            positionFramePosted = true;
+            Choreographer.getInstance().postFrameCallback(positionFrameCallback);
+        }
+    }
+
+    private void flushPendingPosition(){
+        if(positionFramePosted){
+            Choreographer.getInstance().removeFrameCallback(positionFrameCallback);
+            positionFrameCallback.doFrame(0);
+        }
+    }
+
+    private final Choreographer.FrameCallback positionFrameCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            positionFramePosted = false;
+            if (pendingX != floatingView.getLayoutX() || pendingY != floatingView.getLayoutY()) {
+                floatingView.setLayoutPosition(pendingX, pendingY);
+            }
+        }
+    };
+
+    private void endDismissDrag(){
+        overDismissTarget = false;
+        dismissTarget.hide();
+    }
+    /* End methods to coalesce drag updates and manage the dismiss target. */
+
+    /**
+     * Detect pinches and scale the root view to match, which costs no window updates.
+     * The new window size is committed once when the pinch ends.
+     */
+    private final class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+
+        @Override
+        public boolean onScaleBegin(ScaleGestureDetector detector) {
+            View rootView = floatingView.getRootView();
+            if(rootView.getWidth() == 0 || rootView.getHeight() == 0){
+                // We haven't been laid out yet so we don't know what we are scaling.
+                return false;
+            }
+            resizeStartWidth = rootView.getWidth();
+            resizeStartHeight = rootView.getHeight();
+            resizeScale = 1f;
+            hasResized = true;
+            stopLongPressHandler();
+            if(dismissTarget != null){
+                // A pinch ends any drag towards the dismiss target.
+                flushPendingPosition();
+                endDismissDrag();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            // Clamp the scale so both our width and height stay within the limits.
+            float minScale = Math.max((float) minWidth / resizeStartWidth,
+                    (float) minHeight / resizeStartHeight);
+            float maxScale = Math.min((float) maxWidth / resizeStartWidth,
+                    (float) maxHeight / resizeStartHeight);
+            resizeScale = Math.max(minScale,
+                    Math.min(maxScale, resizeScale * detector.getScaleFactor()));
+
+            View rootView = floatingView.getRootView();
+            rootView.setScaleX(resizeScale);
+            rootView.setScaleY(resizeScale);
+            return true;
+        }
+
+        @Override
+        public void onScaleEnd(ScaleGestureDetector detector) {
+            View rootView = floatingView.getRootView();
+            rootView.setScaleX(1f);
+            rootView.setScaleY(1f);
+
+            int width = Math.round(resizeStartWidth * resizeScale);
+            int height = Math.round(resizeStartHeight * resizeScale);
+            floatingView.setLayoutSize(width, height);
+            onResize(width, height);
+            floatingView.notifySnapshotChanged();
+        }
+    }
+
     /** Detect user fling events and make callbacks as necessary. */
     private final class GestureListener extends GestureDetector.SimpleOnGestureListener {
 
@@ -215,6 +429,16 @@ public class FloatingViewTouchListener implements View.OnTouchListener {
 
         @Override
         public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
+            TraceCompat.beginSection(TRACE_FLING);
+            try {
+                return classifyFling(e1, e2, velocityX, velocityY);
+            } finally {
+                TraceCompat.endSection();
+            }
+        }
+
+        private boolean classifyFling(MotionEvent e1, MotionEvent e2,
+                                      float velocityX, float velocityY) {
             boolean result = false;
 
             // Calculate the difference in x,y coordinates between event 1 and event 2.
@@ -258,6 +482,11 @@ public class FloatingViewTouchListener implements View.OnTouchListener {
 
     protected boolean onLongPress() { return false; }
 
+    protected boolean onResize(int width, int height) { return false; }
+
+    /** Called when dropped on the dismiss target, returning false snaps back instead. */
+    protected boolean onDismiss() { return false; }
+
     protected boolean onSwipeRight() { return false; }
 
     protected boolean onSwipeLeft() { return false; }
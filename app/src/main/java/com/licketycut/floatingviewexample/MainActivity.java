@@ -47,10 +47,13 @@ import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.licketycut.floatingviewexample.floatingviews.FloatingBubbleView;
 import com.licketycut.floatingviewexample.floatingviews.FloatingButtonView;
 import com.licketycut.floatingviewexample.floatingviews.FloatingInfoView;
 import com.licketycut.floatingviewexample.utils.SharedPreferencesUtil;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Example activity which demonstrates {@link FloatingView}s
  * using the {@link FloatingViewService}.
@@ -67,12 +70,24 @@ public class MainActivity extends AppCompatActivity {
     // Which floating view we want to start if called back from permission request.
     private FloatingView currentFloatingView;
 
+    // Client for floating views hosted in the :overlay process, null unless it is enabled.
+    private FloatingOverlayClient floatingOverlayClient;
+    // Which remote floating view we want to start if called back from permission request.
+    private Runnable currentRemoteAttach;
+
     private FloatingButtonView floatingButtonView;
     // Flag to indicate exit menu chosen for floating button view in our broadcast receiver.
     private final String FLOATING_VIEW_MENU_EXIT = "FLOATING_VIEW_MENU_EXIT";
     // Flag to indicate on click for floating button view in our broadcast receiver.
     private final String FLOATING_VIEW_BUTTON_ONCLICK = "FLOATING_VIEW_BUTTON_ONCLICK";
     private int floatingViewButtonNumClicks = 0;
+    // Once our floating button is untouched for this long it dims and docks to an edge.
+    private static final long FLOATING_BUTTON_IDLE_DELAY_MS = 30000;
+    // Clicks received since our last feedback, merged so bursts cost one update per interval.
+    private final AtomicInteger pendingButtonClicks = new AtomicInteger(0);
+    private static final long CLICK_FEEDBACK_INTERVAL_MS = 500;
+    // Reused for every click feedback rather than queueing a new toast each time.
+    private Toast clickToast;
 
     private FloatingInfoView floatingInfoView;
     private String floatingInfoViewTitleText;
@@ -83,6 +98,10 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
 
         bindFloatingViewService();
+        if (getResources().getBoolean(R.bool.use_overlay_process)) {
+            floatingOverlayClient = new FloatingOverlayClient(this);
+            floatingOverlayClient.bind();
+        }
 
         setupViews(getResources().getConfiguration().orientation
                 == Configuration.ORIENTATION_LANDSCAPE);
@@ -148,9 +167,21 @@ public class MainActivity extends AppCompatActivity {
         startFloatingButtonA.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                String buttonText = getResources().getString(R.string.button_floating_view);
+                final String buttonText = getResources().getString(R.string.button_floating_view);
+                if (floatingOverlayClient != null) {
+                    startRemoteFloatingView(new Runnable() {
+                        @Override
+                        public void run() {
+                            floatingOverlayClient.attachButton(buttonText,
+                                    FLOATING_VIEW_BUTTON_ONCLICK, FLOATING_VIEW_MENU_EXIT);
+                        }
+                    });
+                    return;
+                }
                 floatingButtonView = new FloatingButtonView(getApplicationContext(), buttonText,
                         FLOATING_VIEW_BUTTON_ONCLICK, FLOATING_VIEW_MENU_EXIT);
+                floatingButtonView.setIdlePolicy(FLOATING_BUTTON_IDLE_DELAY_MS,
+                        FloatingView.IDLE_DIM | FloatingView.IDLE_DOCK);
                 startFloatingView(floatingButtonView);
             }
         });
@@ -160,13 +191,37 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(View view) {
 
-                String title = floatingInfoTitle.getText().toString();
-                String text = floatingInfoText.getText().toString();
+                final String title = floatingInfoTitle.getText().toString();
+                final String text = floatingInfoText.getText().toString();
+                if (floatingOverlayClient != null) {
+                    startRemoteFloatingView(new Runnable() {
+                        @Override
+                        public void run() {
+                            floatingOverlayClient.attachInfo(title, text);
+                        }
+                    });
+                    return;
+                }
                 floatingInfoView = new FloatingInfoView(getApplicationContext(), title, text);
                 startFloatingView(floatingInfoView);
             }
         });
 
+        Button startFloatingBubble = findViewById(R.id.button_start_floating_bubble);
+        startFloatingBubble.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                // The overlay host doesn't host bubbles, so they always float in our process.
+                String buttonText = getResources().getString(R.string.button_floating_view);
+                FloatingBubbleView floatingBubbleView = new FloatingBubbleView(
+                        getApplicationContext(), buttonText,
+                        floatingInfoTitle.getText().toString(),
+                        floatingInfoText.getText().toString(), FLOATING_VIEW_MENU_EXIT);
+                currentRemoteAttach = null;
+                startFloatingView(floatingBubbleView);
+            }
+        });
+
         updateTextViews();
     }
 
@@ -175,10 +230,7 @@ public class MainActivity extends AppCompatActivity {
      * and current info title and text strings.
      */
     public void updateTextViews() {
-        TextView floatingViewButtonClicks = findViewById(R.id.text_num_button_clicks);
-        String numClicks = getResources().getQuantityString(R.plurals.text_num_times,
-                floatingViewButtonNumClicks, floatingViewButtonNumClicks);
-        floatingViewButtonClicks.setText(numClicks);
+        updateNumClicksTextView();
 
         EditText floatingInfoTitle = findViewById(R.id.edit_text_floating_info_title);
         floatingInfoTitle.setText(floatingInfoViewTitleText);
@@ -187,6 +239,39 @@ public class MainActivity extends AppCompatActivity {
         floatingInfoText.setText(floatingInfoViewInfoText);
     }
 
+    private void updateNumClicksTextView() {
+        TextView floatingViewButtonClicks = findViewById(R.id.text_num_button_clicks);
+        String numClicks = getResources().getQuantityString(R.plurals.text_num_times,
+                floatingViewButtonNumClicks, floatingViewButtonNumClicks);
+        floatingViewButtonClicks.setText(numClicks);
+    }
+
+    /**
+     * Show feedback for every click received during the last interval at once,
+     * with a single text view update and our one reused toast.
+     */
+    private final Runnable clickFeedback = new Runnable() {
+        @Override
+        public void run() {
+            // Clicks arriving from now on schedule the next interval.
+            int clicks = pendingButtonClicks.getAndSet(0);
+            if (clicks == 0) {
+                return;
+            }
+            floatingViewButtonNumClicks += clicks;
+            updateNumClicksTextView();
+
+            String message = getResources().getQuantityString(R.plurals.toast_button_clicked,
+                    clicks, clicks);
+            if (clickToast == null) {
+                clickToast = Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT);
+            } else {
+                clickToast.setText(message);
+            }
+            clickToast.show();
+        }
+    };
+
     /**
      * Inflate the action bar menu.
      */
@@ -227,11 +312,25 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Check for permissions and then have the overlay host attach a floating view.
+     */
+    private void startRemoteFloatingView(Runnable remoteAttach) {
+        this.currentRemoteAttach = remoteAttach;
+        startFloatingView(null);
+    }
+
     /**
      * Attach the floating view and start the foreground service.
      */
     private void attachFloatingView(FloatingView floatingView) {
-        if (floatingView != null) {
+        if (currentRemoteAttach != null) {
+            // The overlay host attaches the floating view and starts its own foreground service.
+            currentRemoteAttach.run();
+            currentRemoteAttach = null;
+            floatingOverlayClient.flush();
+            moveTaskToBack(false);
+        } else if (floatingView != null) {
             floatingView.attachToWindow(getApplicationContext(), true);
             moveTaskToBack(false);
         }
@@ -248,8 +347,24 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Detach all floating views, whether they are hosted by us or the overlay host.
+     */
+    private void detachAllFloatingViews() {
+        if (floatingViewBound) {
+            if (floatingViewService != null) {
+                floatingViewService.detachAllFloatingViews();
+            }
+        }
+        if (floatingOverlayClient != null) {
+            floatingOverlayClient.detachAll();
+        }
+    }
+
     private void unbindFloatingViewService() {
         if (floatingViewBound) {
+            // We registered with the local broadcast manager, so unregister from it too.
+            LocalBroadcastManager.getInstance(this).unregisterReceiver(floatingViewServiceReceiver);
             unbindService(floatingViewServiceConnection);
             floatingViewBound = false;
         }
@@ -279,7 +394,8 @@ public class MainActivity extends AppCompatActivity {
 
         @Override
         public void onServiceDisconnected(ComponentName arg0) {
-            unregisterReceiver(floatingViewServiceReceiver);
+            LocalBroadcastManager.getInstance(MainActivity.this)
+                    .unregisterReceiver(floatingViewServiceReceiver);
             floatingViewService = null;
         }
     };
@@ -294,17 +410,18 @@ public class MainActivity extends AppCompatActivity {
             if (action != null) {
                 switch (intent.getAction()) {
                     case FLOATING_VIEW_BUTTON_ONCLICK:
-                        floatingViewButtonNumClicks += 1;
-                        Toast.makeText(context, "Main Activity: Floating Button clicked",
-                                Toast.LENGTH_SHORT).show();
+                        // The first click of an interval schedules feedback for all of them.
+                        if (pendingButtonClicks.getAndIncrement() == 0) {
+                            handler.postDelayed(clickFeedback, CLICK_FEEDBACK_INTERVAL_MS);
+                        }
                         break;
                     case FLOATING_VIEW_MENU_EXIT:
                         finish();
                         break;
                     case FloatingViewService.INTENT_CLOSE:
                         // If floating view service has broadcast intent to close,
-                        // then we are no longer bound.
-                        floatingViewBound = false;
+                        // then unbind so we don't keep our connection or this receiver.
+                        unbindFloatingViewService();
                         break;
                 }
             }
@@ -321,9 +438,7 @@ public class MainActivity extends AppCompatActivity {
         if(requestCode ==REQUEST_CODE_CHECK_DRAW_OVERLAY_PERM) {
             // We've been given permission so start the floating view.
             if (resultCode == RESULT_OK) {
-                if (currentFloatingView != null) {
-                    attachFloatingView(currentFloatingView);
-                }
+                attachFloatingView(currentFloatingView);
             } else if (resultCode != RESULT_CANCELED) {
                 // We've been denied permission, inform the user and try again.
                 // Display a dialog to the user for permission request.
@@ -347,11 +462,7 @@ public class MainActivity extends AppCompatActivity {
                 // If we've been sent a notification to resume
                 // from the floating view service foreground notification,
                 // then detach our floating views and dismiss the foreground notification.
-                if (floatingViewBound) {
-                    if (floatingViewService != null) {
-                        floatingViewService.detachAllFloatingViews();
-                    }
-                }
+                detachAllFloatingViews();
 
                 // We need to duplicate the calling intent and remove the INTENT_START_FROM_NOTIFY
                 // otherwise it may be consumed here again.
@@ -367,7 +478,14 @@ public class MainActivity extends AppCompatActivity {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        // Stop receiving clicks before dropping the feedback still waiting for its interval.
         unbindFloatingViewService();
+        handler.removeCallbacks(clickFeedback);
+        // Count the clicks it would have shown, so none are lost and the next click reschedules.
+        floatingViewButtonNumClicks += pendingButtonClicks.getAndSet(0);
+        if (floatingOverlayClient != null) {
+            floatingOverlayClient.unbind();
+        }
     }
 
     /**
@@ -389,11 +507,7 @@ public class MainActivity extends AppCompatActivity {
         // If we are returning to the foreground,
         // then detach the floating views and dismiss the foreground notification.
         SharedPreferencesUtil.getInstance().setIsAppShowing(this, true);
-        if (floatingViewBound) {
-            if (floatingViewService != null) {
-                floatingViewService.detachAllFloatingViews();
-            }
-        }
+        detachAllFloatingViews();
 
         updateTextViews();
     }
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample.floatingviews;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.licketycut.floatingviewexample.FloatingView;
+import com.licketycut.floatingviewexample.FloatingViewAnimator;
+import com.licketycut.floatingviewexample.FloatingViewService;
+import com.licketycut.floatingviewexample.R;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Extension of our {@link FloatingButtonView} class which expands into a panel
+ * with title and text when clicked, and collapses back when clicked again.
+ * The panel is only inflated on first expand, and is removed from our hierarchy but kept
+ * when we collapse, until memory runs low. Expanding and collapsing stay in our window,
+ * its size is animated with a single window update per frame.
+ */
+public class FloatingBubbleView extends FloatingButtonView {
+    private final String TAG ="FloatingBubbleView";
+
+    // Type and restorer used to rebuild us if the floating view service is restarted.
+    public static final String SNAPSHOT_TYPE ="FloatingBubbleView";
+    public static final SnapshotRestorer SNAPSHOT_RESTORER =new SnapshotRestorer() {
+        @Override
+        public FloatingView restore(Context context,
+                                    Class<? extends FloatingViewService> serviceClass,
+                                    int layoutId, DataInputStream in) throws IOException {
+            String buttonText = readSnapshotString(in);
+            // We don't broadcast clicks, so our on click action is always empty.
+            readSnapshotString(in);
+            String onExitAction = readSnapshotString(in);
+            return new FloatingBubbleView(context, serviceClass, buttonText,
+                    readSnapshotString(in), readSnapshotString(in), onExitAction);
+        }
+    };
+
+    // Duration of our expand and collapse animations.
+    private static final long EXPAND_DURATION_MS = 200;
+
+    private final String title;
+    private final String text;
+
+    // Inflated on first expand, kept while we are collapsed until memory runs low.
+    private View panelView;
+    private boolean isExpanded = false;
+    // Our window size while collapsed, measured before we first add our panel.
+    private int collapsedWidth, collapsedHeight;
+    // Our window size while expanded, measured with our panel.
+    private int expandedWidth, expandedHeight;
+
+    private int numPanelInflations = 0;
+
+    /**
+     * Initialize the floating bubble view.
+     * @param context       Context which to attach.
+     * @param buttonText    Bubble text.
+     * @param title         Title shown in our expanded panel.
+     * @param text          Text shown in our expanded panel.
+     * @param onExitAction  Action string to broadcast when the user exits from our menu.
+     */
+    public FloatingBubbleView(Context context, String buttonText, String title, String text,
+                              String onExitAction) {
+        this(context, FloatingViewService.class, buttonText, title, text, onExitAction);
+    }
+
+    /** Initialize a floating bubble view bound to a floating view service subclass. */
+    public FloatingBubbleView(Context context, Class<? extends FloatingViewService> serviceClass,
+                              String buttonText, String title, String text,
+                              String onExitAction) {
+        super(context, R.layout.floating_bubble, serviceClass, buttonText, "", onExitAction);
+        this.title = title;
+        this.text = text;
+    }
+
+    /** Clicking our bubble toggles our panel rather than broadcasting. */
+    @Override
+    protected void onButtonClick() {
+        if (isExpanded) {
+            collapsePanel();
+        } else {
+            expandPanel();
+        }
+    }
+
+    public boolean isExpanded() {
+        return isExpanded;
+    }
+
+    /** Number of times our panel has been inflated, once unless it was released. */
+    public int getNumPanelInflations() {
+        return numPanelInflations;
+    }
+
+    /** Grow our window to show our panel, inflating it the first time. */
+    public void expandPanel() {
+        if (isExpanded || !isAttached()) {
+            return;
+        }
+        isExpanded = true;
+
+        ViewGroup rootView = (ViewGroup) getRootView();
+        if (panelView == null) {
+            panelView = LayoutInflater.from(rootView.getContext())
+                    .inflate(R.layout.floating_bubble_panel, rootView, false);
+            ((TextView) panelView.findViewById(R.id.text_view_bubble_title)).setText(title);
+            ((TextView) panelView.findViewById(R.id.text_view_bubble_text)).setText(text);
+            panelView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    collapsePanel();
+                }
+            });
+            numPanelInflations++;
+        }
+
+        if (panelView.getParent() == null) {
+            // Fix our window at its collapsed size first,
+            // so it grows from there rather than jumping to wrap our panel.
+            collapsedWidth = rootView.getWidth();
+            collapsedHeight = rootView.getHeight();
+            setLayoutSize(collapsedWidth, collapsedHeight);
+            rootView.addView(panelView);
+        }
+
+        // Our window clips our panel as it grows to the size we measure with it.
+        int unspecified = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+        rootView.measure(unspecified, unspecified);
+        expandedWidth = rootView.getMeasuredWidth();
+        expandedHeight = rootView.getMeasuredHeight();
+        animateWindowSize(expandedWidth, expandedHeight);
+    }
+
+    /** Shrink our window back to our bubble, our panel is removed once we get there. */
+    public void collapsePanel() {
+        if (!isExpanded) {
+            return;
+        }
+        isExpanded = false;
+        animateWindowSize(collapsedWidth, collapsedHeight);
+    }
+
+    private void animateWindowSize(int width, int height) {
+        FloatingViewAnimator animator = FloatingViewAnimator.getInstance();
+        animator.animate(this, FloatingViewAnimator.WINDOW_WIDTH, width,
+                EXPAND_DURATION_MS, null);
+        animator.animate(this, FloatingViewAnimator.WINDOW_HEIGHT, height,
+                EXPAND_DURATION_MS, sizeEndListener);
+    }
+
+    /** Remove our panel once we have finished collapsing, keeping it for next time. */
+    private final FloatingViewAnimator.OnAnimationEndListener sizeEndListener =
+            new FloatingViewAnimator.OnAnimationEndListener() {
+        @Override
+        public void onAnimationEnd(FloatingView floatingView, int property, boolean cancelled) {
+            if (!cancelled && !isExpanded) {
+                removePanel();
+            }
+        }
+    };
+
+    private void removePanel() {
+        if (panelView != null && panelView.getParent() != null) {
+            ((ViewGroup) getRootView()).removeView(panelView);
+        }
+    }
+
+    /** Collapse instantly when detached, so we are attached again as a bubble. */
+    @Override
+    protected void onDetached() {
+        super.onDetached();
+        if (isExpanded || (panelView != null && panelView.getParent() != null)) {
+            isExpanded = false;
+            removePanel();
+            // We aren't attached, so this doesn't update our window.
+            setLayoutSize(collapsedWidth, collapsedHeight);
+        }
+    }
+
+    /** Collapsing our panel is all we need to become minimal, a bubble is already minimal. */
+    @Override
+    protected boolean onCollapse() {
+        if (!isExpanded) {
+            return false;
+        }
+        collapsePanel();
+        return true;
+    }
+
+    /** Our window animates between sizes, so estimate from the size it is heading to. */
+    @Override
+    protected long getEstimatedBytes() {
+        if (isExpanded) {
+            return 4L * expandedWidth * expandedHeight;
+        }
+        if (collapsedWidth > 0) {
+            return 4L * collapsedWidth * collapsedHeight;
+        }
+        return super.getEstimatedBytes();
+    }
+
+    @Override
+    protected long getCollapsedEstimatedBytes() {
+        return isExpanded ? 4L * collapsedWidth * collapsedHeight : getEstimatedBytes();
+    }
+
+    /** Release our panel if memory is low and it isn't showing. */
+    @Override
+    protected void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (isReleaseCachesLevel(level)
+                && !isExpanded && panelView != null && panelView.getParent() == null) {
+            panelView = null;
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Released expanded panel, trim memory level: " + level);
+            }
+        }
+    }
+
+    @Override
+    protected String getSnapshotType() {
+        return SNAPSHOT_TYPE;
+    }
+
+    @Override
+    protected void writeSnapshotContent(DataOutputStream out) throws IOException {
+        super.writeSnapshotContent(out);
+        writeSnapshotString(out, title);
+        writeSnapshotString(out, text);
+    }
+}
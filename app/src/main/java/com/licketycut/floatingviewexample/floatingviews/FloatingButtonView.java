@@ -22,15 +22,21 @@ import android.content.Context;
 import android.content.Intent;
 import android.media.AudioManager;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.SoundEffectConstants;
+import android.view.ViewGroup;
 import android.widget.Button;
 
 import com.licketycut.floatingviewexample.FloatingView;
+import com.licketycut.floatingviewexample.FloatingViewService;
 import com.licketycut.floatingviewexample.FloatingViewTouchListener;
 import com.licketycut.floatingviewexample.MainActivity;
 import com.licketycut.floatingviewexample.R;
 
-
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /** Extension of our {@link FloatingView} class which consists of a button and popup menu. */
 // We understand the implications, our extended touch listener issues performClick() as necessary.
@@ -38,25 +44,70 @@ import com.licketycut.floatingviewexample.R;
 public class FloatingButtonView extends FloatingView {
     private final String TAG ="FloatingButtonView";
 
+    // Type and restorer used to rebuild us if the floating view service is restarted.
+    public static final String SNAPSHOT_TYPE ="FloatingButtonView";
+    public static final SnapshotRestorer SNAPSHOT_RESTORER =new SnapshotRestorer() {
+        @Override
+        public FloatingView restore(Context context,
+                                    Class<? extends FloatingViewService> serviceClass,
+                                    int layoutId, DataInputStream in) throws IOException {
+            return new FloatingButtonView(context, serviceClass, readSnapshotString(in),
+                    readSnapshotString(in), readSnapshotString(in));
+        }
+    };
+
+    private final Button button;
+    private final String buttonText;
+    private final String onClickAction;
+    private final String onExitAction;
+
+    // Our popup menu is built once and reused on every long press.
+    private FloatingButtonViewMenu menu;
+    // Time at which the last long press asked for the menu, used to measure latency.
+    private long menuRequestedNanos;
+    private long lastMenuLatencyNanos;
+
     /**
      * Initialize the floating button view.
      * @param context           Context which to attach.
      * @param buttonText        Button text.
      * @param onClickAction     Action string to broadcast on click.
     */
-    public FloatingButtonView(final Context context, String buttonText,
-                              final String onClickAction, final String onExitAction) {
+    public FloatingButtonView(Context context, String buttonText,
+                              String onClickAction, String onExitAction) {
+        this(context, FloatingViewService.class, buttonText, onClickAction, onExitAction);
+    }
+
+    /** Initialize a floating button view bound to a floating view service subclass. */
+    public FloatingButtonView(Context context, Class<? extends FloatingViewService> serviceClass,
+                              String buttonText, String onClickAction, String onExitAction) {
+        this(context, R.layout.floating_button, serviceClass, buttonText, onClickAction,
+                onExitAction);
+    }
+
+    /**
+     * Initialize a floating button view with a subclass layout,
+     * which must contain our button_floating_view button.
+     */
+    protected FloatingButtonView(final Context context, int layoutId,
+                                 Class<? extends FloatingViewService> serviceClass,
+                                 String buttonText, String onClickAction, String onExitAction) {
         // Call floating view superclass first to initialize the root view.
-        super(context, R.layout.floating_button);
+        super(context, layoutId, serviceClass);
+        this.buttonText = buttonText;
+        this.onClickAction = onClickAction;
+        this.onExitAction = onExitAction;
 
-        final Button button = getRootView().findViewById(R.id.button_floating_view);
+        button = getRootView().findViewById(R.id.button_floating_view);
         button.setText(buttonText);
 
         // Listener which allows the button to be moved around the screen 
         // and has callbacks for user touch events.
-        button.setOnTouchListener(new FloatingViewTouchListener(this,
-                // We don't want to handle gestures, just movement and clicks.
-                FloatingViewTouchListener.IGNORE_GESTURES){
+        FloatingViewTouchListener touchListener = new FloatingViewTouchListener(this,
+                // We don't want to handle gestures, just movement, pinches, dismissal and clicks.
+                FloatingViewTouchListener.IGNORE_GESTURES
+                        | FloatingViewTouchListener.ALLOW_RESIZE
+                        | FloatingViewTouchListener.ALLOW_DISMISS){
 
             // If our button has been clicked but not dragged then broadcast our on click message.
             @Override
@@ -69,52 +120,147 @@ public class FloatingButtonView extends FloatingView {
                         // Click only sounds if user has touch sounds enabled.
                         audioManager.playSoundEffect(SoundEffectConstants.CLICK);
                     }
-                broadcastOnClick(onClickAction);
+                onButtonClick();
                 return true;
             }
 
             // If our button has been long clicked but not dragged then open the popup menu.
             @Override
             public boolean onLongPress(){
-                new FloatingButtonViewMenu(getRootView().getContext(), button,
-                        R.menu.menu_floating_button,
-                        new FloatingButtonViewMenu.OnFloatingButtonMenuCallback() {
-
-                    @Override
-                    public void onShowMainItemClick() {
-                        // Create an intent to start the the main activity.
-                        Intent intent = new Intent(getRootView().getContext(), MainActivity.class);
-                        intent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP
-                                | Intent.FLAG_ACTIVITY_NO_ANIMATION);
-                        // Indicate to the main activity
-                        // that we want the notification to be dismissed.
-                        try {
-                            // Send the intent.
-                            PendingIntent pendingIntent
-                                    = PendingIntent.getActivity(getRootView().getContext(),
-                                    0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
-                            pendingIntent.send();
-                            detachFromWindow(true);
-                        } catch(PendingIntent.CanceledException e) {
-                            Log.w(TAG, "Pending intent to start main activity failed : "
-                                    +e.getMessage());
-                        }
-                    }
+                showMenu();
+                return true;
+            }
 
-                    /** User has chosen to exit the app from the floating button view. */
-                    @Override
-                    public void onCloseItemClick() {
-                        // Detach ourselves and dismiss the notification.
-                        detachFromWindow(true);
-                        broadcastOnClick(onExitAction);
-                        // Unbind from the floating view service.
-                        unbindFloatingViewService();
-                    }
-                }).show();
+            // We have been dropped on the dismiss target, so detach and unbind.
+            // The notification is dismissed once the last floating view is detached.
+            @Override
+            public boolean onDismiss(){
+                dismissFromWindow(false);
+                return true;
+            }
+
+            // Our window has been pinched to a new size, keep our round button round.
+            @Override
+            public boolean onResize(int width, int height){
+                resizeButton(width, height);
                 return true;
             }
 
+        };
+        int minSize = context.getResources().getDimensionPixelSize(R.dimen.floating_button_min_size);
+        int maxSize = context.getResources().getDimensionPixelSize(R.dimen.floating_button_max_size);
+        touchListener.setResizeLimits(minSize, minSize, maxSize, maxSize);
+        button.setOnTouchListener(touchListener);
+    }
+
+    /** Our window size was saved when we were pinched, so size our button to match. */
+    @Override
+    protected void onLayoutSizeRestored(int width, int height) {
+        if (width > 0 && height > 0) {
+            resizeButton(width, height);
+        }
+    }
+
+    private void resizeButton(int width, int height) {
+        ViewGroup.LayoutParams layoutParams = button.getLayoutParams();
+        layoutParams.width = Math.min(width, height);
+        layoutParams.height = layoutParams.width;
+        button.setLayoutParams(layoutParams);
+    }
+
+    /** Our button has been clicked, by default broadcast our on click action. */
+    protected void onButtonClick() {
+        broadcastOnClick(onClickAction);
+    }
+
+    @Override
+    protected String getSnapshotType() {
+        return SNAPSHOT_TYPE;
+    }
+
+    @Override
+    protected void writeSnapshotContent(DataOutputStream out) throws IOException {
+        writeSnapshotString(out, buttonText);
+        writeSnapshotString(out, onClickAction);
+        writeSnapshotString(out, onExitAction);
+    }
+
+    /** Build our popup menu ahead of time so the first long press doesn't have to. */
+    @Override
+    protected void onAttached() {
+        getRootView().post(new Runnable() {
+            @Override
+            public void run() {
+                getMenu();
+            }
         });
     }
-}
 
+    private FloatingButtonViewMenu getMenu() {
+        if (menu == null) {
+            menu = new FloatingButtonViewMenu(getRootView().getContext(), button,
+                    R.menu.menu_floating_button, menuCallback);
+        }
+        return menu;
+    }
+
+    /** Show our popup menu and measure how long it takes to become visible. */
+    private void showMenu() {
+        menuRequestedNanos = System.nanoTime();
+        getMenu().show();
+        // The popup window draws on the next frame.
+        Choreographer.getInstance().postFrameCallback(menuVisibleCallback);
+    }
+
+    /** Time taken from the last long press until the popup menu was drawn. */
+    public long getLastMenuLatencyNanos() {
+        return lastMenuLatencyNanos;
+    }
+
+    private final Choreographer.FrameCallback menuVisibleCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            lastMenuLatencyNanos = System.nanoTime() - menuRequestedNanos;
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Long press to menu visible: "
+                        + TimeUnit.NANOSECONDS.toMillis(lastMenuLatencyNanos) + "ms");
+            }
+        }
+    };
+
+    private final FloatingButtonViewMenu.OnFloatingButtonMenuCallback menuCallback =
+            new FloatingButtonViewMenu.OnFloatingButtonMenuCallback() {
+
+        @Override
+        public void onShowMainItemClick() {
+            // Create an intent to start the the main activity.
+            Intent intent = new Intent(getRootView().getContext(), MainActivity.class);
+            intent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP
+                    | Intent.FLAG_ACTIVITY_NO_ANIMATION);
+            // Indicate to the main activity
+            // that we want the notification to be dismissed.
+            try {
+                // Send the intent.
+                PendingIntent pendingIntent
+                        = PendingIntent.getActivity(getRootView().getContext(),
+                        0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+                pendingIntent.send();
+                dismissFromWindow(true);
+            } catch(PendingIntent.CanceledException e) {
+                Log.w(TAG, "Pending intent to start main activity failed : "
+                        +e.getMessage());
+            }
+        }
+
+        /** User has chosen to exit the app from the floating button view. */
+        @Override
+        public void onCloseItemClick() {
+            // Detach ourselves and dismiss the notification.
+            detachFromWindow(true);
+            broadcastOnExit(onExitAction);
+            // Unbind from the floating view service.
+            unbindFloatingViewService();
+        }
+    };
+}
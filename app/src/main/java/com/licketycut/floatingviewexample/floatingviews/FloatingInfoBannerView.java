@@ -0,0 +1,318 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample.floatingviews;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Build;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.text.PrecomputedTextCompat;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import com.licketycut.floatingviewexample.R;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Flat replacement for the floating_info layout, a single view which draws
+ * the rounded rectangle, title and info text itself instead of nesting layouts.
+ * Text layouts are cached and only rebuilt when the text or width changes.
+ * Before Pie a StaticLayout can't reuse the measurements of precomputed text,
+ * so once we know our width we build layouts for it on a background thread.
+ */
+public class FloatingInfoBannerView extends View {
+
+    // Dimensions matching the floating_info layout, in dp.
+    private static final int MARGIN_DP = 8;
+    private static final int PADDING_DP = 10;
+    private static final int INFO_INSET_DP = 20;
+    private static final int CORNER_RADIUS_DP = 5;
+    private static final int STROKE_WIDTH_DP = 1;
+    // Default TextView text size, in sp.
+    private static final int TEXT_SIZE_SP = 14;
+
+    // Shared by all banners to build layouts of precomputed text before Pie.
+    private static final ExecutorService layoutExecutor = Executors.newSingleThreadExecutor();
+
+    private final float margin;
+    private final float padding;
+    private final float infoInset;
+    private final float cornerRadius;
+
+    private final Paint fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint strokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint titlePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint infoPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF rect = new RectF();
+
+    private CharSequence titleText = "";
+    private CharSequence infoText = "";
+    private boolean infoVisible = true;
+
+    // Cached text layouts, null when they need to be rebuilt.
+    private StaticLayout titleLayout;
+    private StaticLayout infoLayout;
+
+    public FloatingInfoBannerView(Context context) {
+        this(context, null);
+    }
+
+    public FloatingInfoBannerView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        margin = dpToPx(MARGIN_DP);
+        padding = dpToPx(PADDING_DP);
+        infoInset = dpToPx(INFO_INSET_DP);
+        cornerRadius = dpToPx(CORNER_RADIUS_DP);
+
+        fillPaint.setStyle(Paint.Style.FILL);
+        fillPaint.setColor(ContextCompat.getColor(context,
+                android.R.color.background_light));
+        strokePaint.setStyle(Paint.Style.STROKE);
+        strokePaint.setStrokeWidth(dpToPx(STROKE_WIDTH_DP));
+        strokePaint.setColor(ContextCompat.getColor(context, R.color.colorPrimaryDark));
+
+        float textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP,
+                getResources().getDisplayMetrics());
+        titlePaint.setTextSize(textSize);
+        titlePaint.setColor(ContextCompat.getColor(context, R.color.colorPrimaryDark));
+        infoPaint.setTextSize(textSize);
+        infoPaint.setColor(ContextCompat.getColor(context, R.color.colorPrimary));
+
+        // We draw our own text, so make sure accessibility services ask us for it.
+        setImportantForAccessibility(IMPORTANT_FOR_ACCESSIBILITY_YES);
+    }
+
+    /** Begin methods to set our content. */
+    public void setTitle(CharSequence title) {
+        if (!TextUtils.equals(title, titleText)) {
+            titleText = title == null ? "" : title;
+            if (!buildLayoutInBackground(true)) {
+                titleLayout = null;
+                relayoutOrInvalidate();
+            }
+        }
+    }
+
+    public void setInfo(CharSequence info) {
+        if (!TextUtils.equals(info, infoText)) {
+            infoText = info == null ? "" : info;
+            if (!buildLayoutInBackground(false)) {
+                infoLayout = null;
+                relayoutOrInvalidate();
+            }
+        }
+    }
+
+    public void setInfoVisible(boolean visible) {
+        if (infoVisible != visible) {
+            infoVisible = visible;
+            requestLayout();
+            invalidate();
+        }
+    }
+    /* End methods to set our content. */
+
+    /** Text metrics used to precompute title text for this view. */
+    public PrecomputedTextCompat.Params getTitleTextMetricsParams() {
+        return new PrecomputedTextCompat.Params.Builder(titlePaint).build();
+    }
+
+    /** Text metrics used to precompute info text for this view. */
+    public PrecomputedTextCompat.Params getInfoTextMetricsParams() {
+        return new PrecomputedTextCompat.Params.Builder(infoPaint).build();
+    }
+
+    /** Height our info text adds to the banner, used to estimate our collapsed size. */
+    public int getInfoHeight() {
+        return infoLayout == null ? 0 : (int) (infoLayout.getHeight() + 2 * infoInset);
+    }
+
+    /**
+     * If we haven't been laid out yet or the new text changes our height then request
+     * a layout, otherwise rebuild the text layout in place and just redraw.
+     */
+    private void relayoutOrInvalidate() {
+        int width = getWidth();
+        if (width > 0) {
+            int oldHeight = getHeight();
+            buildLayouts(width);
+            if (getDesiredHeight() == oldHeight) {
+                invalidate();
+                return;
+            }
+        }
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        // Like the original layout we always match our parent's width.
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        buildLayouts(width);
+        setMeasuredDimension(width,
+                resolveSize(getDesiredHeight(), heightMeasureSpec));
+    }
+
+    /** Build any text layouts which are missing or were built for a different width. */
+    private void buildLayouts(int width) {
+        int titleWidth = getTitleWidth(width);
+        int infoWidth = getInfoWidth(width);
+
+        if (titleLayout == null || titleLayout.getWidth() != titleWidth) {
+            titleLayout = createLayout(titleText, titlePaint, titleWidth);
+        }
+        if (infoLayout == null || infoLayout.getWidth() != infoWidth) {
+            infoLayout = createLayout(infoText, infoPaint, infoWidth);
+        }
+    }
+
+    private int getTitleWidth(int width) {
+        return Math.max(0, (int) (width - 2 * (margin + padding)));
+    }
+
+    private int getInfoWidth(int width) {
+        return Math.max(0, (int) (getTitleWidth(width) - 2 * infoInset));
+    }
+
+    /**
+     * Before Pie build the layout of precomputed text on our background thread,
+     * drawing the previous layout until it's ready.
+     *
+     * @return  False if the layout should be built on the main thread as usual.
+     */
+    private boolean buildLayoutInBackground(final boolean isTitle) {
+        final CharSequence text = isTitle ? titleText : infoText;
+        int width = getWidth();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                || !(text instanceof PrecomputedTextCompat) || width <= 0) {
+            return false;
+        }
+
+        final TextPaint paint = isTitle ? titlePaint : infoPaint;
+        final int layoutWidth = isTitle ? getTitleWidth(width) : getInfoWidth(width);
+        layoutExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final StaticLayout layout = createLayout(text, paint, layoutWidth);
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onBackgroundLayoutBuilt(isTitle, text, layout);
+                    }
+                });
+            }
+        });
+        return true;
+    }
+
+    private void onBackgroundLayoutBuilt(boolean isTitle, CharSequence text,
+                                         StaticLayout layout) {
+        // Drop the layout if our text or width has changed while it was being built.
+        int width = getWidth();
+        if (isTitle) {
+            if (text != titleText || layout.getWidth() != getTitleWidth(width)) {
+                return;
+            }
+            titleLayout = layout;
+        } else {
+            if (text != infoText || layout.getWidth() != getInfoWidth(width)) {
+                return;
+            }
+            infoLayout = layout;
+        }
+        relayoutOrInvalidate();
+    }
+
+    private int getDesiredHeight() {
+        float height = 2 * (margin + padding) + titleLayout.getHeight();
+        if (infoVisible) {
+            height += infoLayout.getHeight() + 2 * infoInset;
+        }
+        return (int) Math.ceil(height);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static StaticLayout createLayout(CharSequence text, TextPaint paint, int width) {
+        text = getPlatformPrecomputedText(text);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width).build();
+        } else {
+            return new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_NORMAL,
+                    1f, 0f, true);
+        }
+    }
+
+    /**
+     * StaticLayout only reuses the measurements of the platform's PrecomputedText,
+     * which PrecomputedTextCompat wraps from Pie onwards.
+     */
+    @SuppressLint("RestrictedApi")
+    private static CharSequence getPlatformPrecomputedText(CharSequence text) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                && text instanceof PrecomputedTextCompat) {
+            CharSequence precomputed = ((PrecomputedTextCompat) text).getPrecomputedText();
+            if (precomputed != null) {
+                return precomputed;
+            }
+        }
+        return text;
+    }
+
+    /** Describe our title and info text, since we draw them ourselves. */
+    @Override
+    public void onInitializeAccessibilityNodeInfo(AccessibilityNodeInfo info) {
+        super.onInitializeAccessibilityNodeInfo(info);
+        info.setText(infoVisible ? TextUtils.concat(titleText, "\n", infoText) : titleText);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        // Inset our rectangle by half the stroke so the whole stroke is drawn.
+        float halfStroke = strokePaint.getStrokeWidth() / 2;
+        rect.set(margin + halfStroke, margin + halfStroke,
+                getWidth() - margin - halfStroke, getHeight() - margin - halfStroke);
+        canvas.drawRoundRect(rect, cornerRadius, cornerRadius, fillPaint);
+        canvas.drawRoundRect(rect, cornerRadius, cornerRadius, strokePaint);
+
+        int saveCount = canvas.save();
+        canvas.translate(margin + padding, margin + padding);
+        titleLayout.draw(canvas);
+        if (infoVisible) {
+            canvas.translate(infoInset, titleLayout.getHeight() + infoInset);
+            infoLayout.draw(canvas);
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    private float dpToPx(int dp) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp,
+                getResources().getDisplayMetrics());
+    }
+}
@@ -16,21 +16,32 @@
 
 package com.licketycut.floatingviewexample.floatingviews;
 
-import android.animation.Animator;
-import android.animation.ObjectAnimator;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.text.PrecomputedTextCompat;
+import android.support.v4.widget.TextViewCompat;
+import android.text.TextUtils;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.View;
 import android.widget.TextView;
 
 import com.licketycut.floatingviewexample.FloatingView;
+import com.licketycut.floatingviewexample.FloatingViewAnimator;
+import com.licketycut.floatingviewexample.FloatingViewService;
 import com.licketycut.floatingviewexample.FloatingViewTouchListener;
 import com.licketycut.floatingviewexample.MainActivity;
 import com.licketycut.floatingviewexample.R;
+import com.licketycut.floatingviewexample.utils.PrecomputedTextCache;
+import com.licketycut.floatingviewexample.utils.TimerWheel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 /** 
  * Extension of our {@link FloatingView} class which consists of 
@@ -40,25 +51,309 @@ import com.licketycut.floatingviewexample.R;
 public class FloatingInfoView extends FloatingView {
     private final String TAG ="FloatingButtonView";
 
+    // Type and restorer used to rebuild us if the floating view service is restarted.
+    public static final String SNAPSHOT_TYPE ="FloatingInfoView";
+    public static final SnapshotRestorer SNAPSHOT_RESTORER =new SnapshotRestorer() {
+        @Override
+        public FloatingView restore(Context context,
+                                    Class<? extends FloatingViewService> serviceClass,
+                                    int layoutId, DataInputStream in) throws IOException {
+            return new FloatingInfoView(context, serviceClass, readSnapshotString(in),
+                    readSnapshotString(in), layoutId == R.layout.floating_info_flat);
+        }
+    };
+
+    // Either our text views or our flat banner view, depending on the layout we use.
+    private final TextView titleTextView;
+    private final TextView infoTextView;
+    private final FloatingInfoBannerView bannerView;
+
+    // The text we most recently asked each text view to show.
+    private CharSequence titleText;
+    private CharSequence infoText;
+
+    // Live content waiting for the next frame, guarded by contentLock.
+    private final Object contentLock = new Object();
+    private CharSequence pendingTitleText;
+    private CharSequence pendingInfoText;
+    private boolean contentFrameScheduled = false;
+
+    // Live content update counters.
+    private long numContentUpdates = 0;
+    private long numMergedContentUpdates = 0;
+    private long numDroppedContentUpdates = 0;
+    private long numAppliedContentFrames = 0;
+    private long numSkippedContentFields = 0;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Whether our title and info text are still being precomputed, so aren't showing yet.
+    private boolean titlePending = false;
+    private boolean infoPending = false;
+    // Longest we will wait for text being precomputed in the background before attaching,
+    // after which we precompute it ourselves.
+    private static final long TEXT_WAIT_MS = 8;
+
+    // Duration of the animation which flings us off screen when swiped.
+    private static final long SWIPE_DURATION_MS = 300;
+
+    // How long we stay attached before dismissing ourselves, zero to stay until dismissed.
+    private long autoDismissDelay = 0;
+
     /** Initialize our FloatingInfoView with title and text values. */
     public FloatingInfoView(Context context, String title, String text) {
+        this(context, title, text, false);
+    }
+
+    /**
+     * Initialize our FloatingInfoView with title and text values.
+     *
+     * @param flat  Use the single custom drawn {@link FloatingInfoBannerView}
+     *              instead of the nested floating_info layout.
+     */
+    public FloatingInfoView(Context context, String title, String text, boolean flat) {
+        this(context, FloatingViewService.class, title, text, flat);
+    }
+
+    /** Initialize our FloatingInfoView bound to a floating view service subclass. */
+    public FloatingInfoView(Context context, Class<? extends FloatingViewService> serviceClass,
+                            String title, String text, boolean flat) {
         // Call FloatingView superclass first to initialize the root view.
-        super(context, R.layout.floating_info);
+        super(context, flat ? R.layout.floating_info_flat : R.layout.floating_info,
+                serviceClass);
 
         // Setup our FloatingView specific layout properties.
         setLayoutWidthMatchParent();
         setLayoutGravity(Gravity.TOP);
         allowFloatingViewOffScreen();
 
-        TextView titleTextView =getRootView().findViewById(R.id.text_view_title);
-        titleTextView.setText(title);
+        if (flat) {
+            bannerView = (FloatingInfoBannerView) getRootView();
+            titleTextView = null;
+            infoTextView = null;
+        } else {
+            bannerView = null;
+            titleTextView = getRootView().findViewById(R.id.text_view_title);
+            infoTextView = getRootView().findViewById(R.id.text_view_info);
+        }
+
+        // Text is measured off the main thread so attaching usually does no text shaping.
+        titleText = title;
+        setPrecomputedText(true, title);
 
-        TextView infoTextView =getRootView().findViewById(R.id.text_view_info);
-        infoTextView.setText(text);
+        infoText = text;
+        setPrecomputedText(false, text);
 
         setupViewListeners(getRootView());
     }
 
+    /**
+     * Update our title and info text, may be called from any thread at any rate.
+     * Updates are coalesced so that at most one is applied per frame,
+     * only the most recent values are shown and unchanged text is skipped.
+     *
+     * @param title Title text or null to leave it unchanged.
+     * @param text  Info text or null to leave it unchanged.
+     */
+    public void updateContent(CharSequence title, CharSequence text) {
+        boolean scheduleFrame = false;
+        synchronized (contentLock) {
+            numContentUpdates++;
+            if (contentFrameScheduled) {
+                // This update will be merged into the one already waiting for the next frame.
+                numMergedContentUpdates++;
+            }
+            if (title != null) {
+                if (pendingTitleText != null) {
+                    numDroppedContentUpdates++;
+                }
+                pendingTitleText = title;
+            }
+            if (text != null) {
+                if (pendingInfoText != null) {
+                    numDroppedContentUpdates++;
+                }
+                pendingInfoText = text;
+            }
+            if (!contentFrameScheduled) {
+                contentFrameScheduled = true;
+                scheduleFrame = true;
+            }
+        }
+
+        if (scheduleFrame) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                Choreographer.getInstance().postFrameCallback(contentFrameCallback);
+            } else {
+                // Choreographer is per thread, so post to the main thread first.
+                mainHandler.post(scheduleContentFrame);
+            }
+        }
+    }
+
+    public long getNumContentUpdates() {
+        synchronized (contentLock) {
+            return numContentUpdates;
+        }
+    }
+
+    public long getNumMergedContentUpdates() {
+        synchronized (contentLock) {
+            return numMergedContentUpdates;
+        }
+    }
+
+    public long getNumDroppedContentUpdates() {
+        synchronized (contentLock) {
+            return numDroppedContentUpdates;
+        }
+    }
+
+    public long getNumAppliedContentFrames() {
+        return numAppliedContentFrames;
+    }
+
+    public long getNumSkippedContentFields() {
+        return numSkippedContentFields;
+    }
+
+    private final Runnable scheduleContentFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(contentFrameCallback);
+        }
+    };
+
+    /** Apply the latest pending content once per frame. */
+    private final Choreographer.FrameCallback contentFrameCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            CharSequence title;
+            CharSequence text;
+            synchronized (contentLock) {
+                title = pendingTitleText;
+                text = pendingInfoText;
+                pendingTitleText = null;
+                pendingInfoText = null;
+                contentFrameScheduled = false;
+            }
+            numAppliedContentFrames++;
+
+            // Our text views match their parent's width, so as long as the line count
+            // doesn't change setText only invalidates rather than requesting a new layout.
+            // New text goes through the cache, repeated values are shown straight away.
+            if (title != null) {
+                if (TextUtils.equals(title, titleText)) {
+                    numSkippedContentFields++;
+                } else {
+                    titleText = title;
+                    setPrecomputedText(true, title);
+                }
+            }
+            if (text != null) {
+                if (TextUtils.equals(text, infoText)) {
+                    numSkippedContentFields++;
+                } else {
+                    infoText = text;
+                    setPrecomputedText(false, text);
+                }
+            }
+            notifySnapshotChanged();
+        }
+    };
+
+    /**
+     * Show precomputed text, using the cached layout if this text has been shown before,
+     * otherwise measure it on a background thread and show it once it's ready.
+     * Until then we keep showing our previous text.
+     */
+    private void setPrecomputedText(final boolean isTitle, CharSequence text) {
+        PrecomputedTextCompat.Params params = getTextMetricsParams(isTitle);
+        PrecomputedTextCache cache = PrecomputedTextCache.getInstance();
+        PrecomputedTextCompat cached = cache.get(text, params);
+        if (cached != null) {
+            showPrecomputedText(isTitle, cached);
+            setTextPending(isTitle, false);
+            return;
+        }
+
+        setTextPending(isTitle, true);
+        cache.precompute(text, params, new PrecomputedTextCache.OnPrecomputedListener() {
+            @Override
+            public void onPrecomputed(CharSequence text, PrecomputedTextCompat precomputed) {
+                // Only show the text if it hasn't been replaced while we were measuring,
+                // or already shown because we were attached before it was ready.
+                CharSequence current = isTitle ? titleText : infoText;
+                if (current == text && isTextPending(isTitle)) {
+                    showPrecomputedText(isTitle, precomputed);
+                    setTextPending(isTitle, false);
+                }
+            }
+        });
+    }
+
+    /** Never attach without our text, wait briefly for it or precompute it now. */
+    @Override
+    protected void onAttaching() {
+        if (titlePending) {
+            showTextNow(true);
+        }
+        if (infoPending) {
+            showTextNow(false);
+        }
+    }
+
+    private void showTextNow(boolean isTitle) {
+        CharSequence text = isTitle ? titleText : infoText;
+        showPrecomputedText(isTitle, PrecomputedTextCache.getInstance().getNow(text,
+                getTextMetricsParams(isTitle), TEXT_WAIT_MS));
+        setTextPending(isTitle, false);
+    }
+
+    private boolean isTextPending(boolean isTitle) {
+        return isTitle ? titlePending : infoPending;
+    }
+
+    private void setTextPending(boolean isTitle, boolean pending) {
+        if (isTitle) {
+            titlePending = pending;
+        } else {
+            infoPending = pending;
+        }
+    }
+
+    /** Begin methods to show text in either our text views or our flat banner view. */
+    private PrecomputedTextCompat.Params getTextMetricsParams(boolean isTitle) {
+        if (bannerView != null) {
+            return isTitle ? bannerView.getTitleTextMetricsParams()
+                    : bannerView.getInfoTextMetricsParams();
+        }
+        return TextViewCompat.getTextMetricsParams(isTitle ? titleTextView : infoTextView);
+    }
+
+    private void showPrecomputedText(boolean isTitle, PrecomputedTextCompat precomputed) {
+        if (bannerView != null) {
+            showText(isTitle, precomputed);
+        } else {
+            TextViewCompat.setPrecomputedText(isTitle ? titleTextView : infoTextView,
+                    precomputed);
+        }
+    }
+
+    private void showText(boolean isTitle, CharSequence text) {
+        if (bannerView != null) {
+            if (isTitle) {
+                bannerView.setTitle(text);
+            } else {
+                bannerView.setInfo(text);
+            }
+        } else {
+            (isTitle ? titleTextView : infoTextView).setText(text);
+        }
+    }
+    /* End methods to show text in either our text views or our flat banner view. */
+
     /** Setup our touch, swipe and click listeners. */
     private void setupViewListeners(final View rootView) {
         rootView.setOnTouchListener(new FloatingViewTouchListener(this,
@@ -74,53 +369,119 @@ public class FloatingInfoView extends FloatingView {
             }
 
             // On swipe gesture callbacks, begin animations to fling rootView off screen.
-            // Add finish listener to cleanup.
+            // Our end listener detaches us once we are off screen.
             @Override
             public boolean onSwipeRight() {
-                ObjectAnimator animation =ObjectAnimator.ofFloat(rootView, 
-                                                    "translationX", rootView.getWidth());
-                animation.setDuration(300);
-                animation.addListener(animationListener);
-                animation.start();
-
+                FloatingViewAnimator.getInstance().animate(FloatingInfoView.this,
+                        FloatingViewAnimator.TRANSLATION_X, rootView.getWidth(),
+                        SWIPE_DURATION_MS, swipeEndListener);
                 return true;
             }
 
             @Override
             public boolean onSwipeLeft() {
-                ObjectAnimator animation =ObjectAnimator.ofFloat(rootView, 
-                                                    "translationX", -rootView.getWidth());
-                animation.setDuration(300);
-                animation.addListener(animationListener);
-                animation.start();
-
+                FloatingViewAnimator.getInstance().animate(FloatingInfoView.this,
+                        FloatingViewAnimator.TRANSLATION_X, -rootView.getWidth(),
+                        SWIPE_DURATION_MS, swipeEndListener);
                 return true;
             }
         });
     }
 
-    /** Handle Animation callbacks, we really only want animation end. */
-    private final Animator.AnimatorListener animationListener =new Animator.AnimatorListener() {
+    @Override
+    protected String getSnapshotType() {
+        return SNAPSHOT_TYPE;
+    }
 
-        @Override public void onAnimationStart(Animator animation) {}
-        @Override public void onAnimationRepeat(Animator animation) {}
-        @Override public void onAnimationCancel(Animator animation) {}
+    @Override
+    protected void writeSnapshotContent(DataOutputStream out) throws IOException {
+        writeSnapshotString(out, titleText);
+        writeSnapshotString(out, infoText);
+    }
 
-        @Override public void onAnimationEnd(Animator animation) {
-            // We should not destroy the view inside the animation listener UI thread
-            // as it still holds a reference to the view.
-            // So create a separate thread to do it.
-            Handler handler = new Handler();
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    detachFromWindow(true);
-                }
-            });
+    /**
+     * Dismiss ourselves after a delay once attached.
+     *
+     * @param delayMs   Time to stay attached, zero to stay until the user dismisses us.
+     */
+    public void setAutoDismissDelay(long delayMs) {
+        autoDismissDelay = delayMs;
+        if (isAttached()) {
+            scheduleAutoDismiss();
+        }
+    }
 
+    private void scheduleAutoDismiss() {
+        if (autoDismissDelay > 0) {
+            TimerWheel.getInstance().schedule(dismissTimeout, autoDismissDelay);
+        } else {
+            TimerWheel.getInstance().cancel(dismissTimeout);
+        }
+    }
+
+    @Override
+    protected void onAttached() {
+        scheduleAutoDismiss();
+    }
+
+    @Override
+    protected void onDetached() {
+        TimerWheel.getInstance().cancel(dismissTimeout);
+    }
+
+    /** Timeout on the shared timer wheel used to detach and dismiss ourselves. */
+    private final TimerWheel.Timeout dismissTimeout = new TimerWheel.Timeout() {
+        @Override
+        public void onTimeout() {
+            dismissFromWindow(true);
         }
     };
 
+    /** Once we have been swiped off screen, detach and dismiss ourselves. */
+    private final FloatingViewAnimator.OnAnimationEndListener swipeEndListener =
+            new FloatingViewAnimator.OnAnimationEndListener() {
+        @Override
+        public void onAnimationEnd(FloatingView floatingView, int property, boolean cancelled) {
+            if (cancelled) {
+                return;
+            }
+            // The animator calls us from its frame callback rather than from inside
+            // a draw pass, so we can detach straight away. Reset our translation first
+            // so we are back in place if we are ever attached again.
+            getRootView().setTranslationX(0);
+            dismissFromWindow(true);
+        }
+    };
+
+    /** When evicted we collapse to just our title, touch to restore the info text. */
+    @Override
+    protected boolean onCollapse() {
+        if (bannerView != null) {
+            bannerView.setInfoVisible(false);
+        } else {
+            infoTextView.setVisibility(View.GONE);
+        }
+        return true;
+    }
+
+    @Override
+    protected void onExpand() {
+        if (bannerView != null) {
+            bannerView.setInfoVisible(true);
+        } else {
+            infoTextView.setVisibility(View.VISIBLE);
+        }
+    }
+
+    /** Once laid out again our window shrinks by the height of our info text. */
+    @Override
+    protected long getCollapsedEstimatedBytes() {
+        int infoHeight = bannerView != null ? bannerView.getInfoHeight()
+                : infoTextView.getHeight();
+        int height = Math.max(0, getRootView().getHeight() - infoHeight);
+        return 4L * getRootView().getWidth() * height;
+    }
+
     private void dismissAndReturnToMain() {
         // Create an intent to start the main activity.
         Intent intent = new Intent(getRootView().getContext(), MainActivity.class);
@@ -133,7 +494,7 @@ public class FloatingInfoView extends FloatingView {
         } catch(PendingIntent.CanceledException e) {
             Log.w(TAG, "Pending intent to start Main Activity failed : "+e.getMessage());
         } finally {
-            detachFromWindow(true);
+            dismissFromWindow(true);
         }
     }
 
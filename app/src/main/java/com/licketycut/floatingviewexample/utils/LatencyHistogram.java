@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample.utils;
+
+import java.io.PrintWriter;
+
+/**
+ * Simple always on latency histogram with power of two microsecond buckets,
+ * cheap enough to record on hot paths and summarized in our diagnostics.
+ * Must only be used from the main thread.
+ */
+public class LatencyHistogram {
+    // Bucket i holds latencies below 2^i microseconds, the last bucket holds everything else.
+    private static final int NUM_BUCKETS = 32;
+
+    private final long[] buckets = new long[NUM_BUCKETS];
+    private long count = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+
+    /** Record a latency measured with {@link System#nanoTime()}. */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile.
+     *
+     * @param percentile    Percentile from 1 to 100.
+     * @return              Latency in microseconds, zero if nothing has been recorded.
+     */
+    public long getPercentileMicros(int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = (count * percentile + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return 1L << i;
+            }
+        }
+        return 1L << (NUM_BUCKETS - 1);
+    }
+
+    /** Print a one line summary of our latencies. */
+    public void dump(PrintWriter pw, String name) {
+        pw.print(name);
+        pw.print(": count=");
+        pw.print(count);
+        if (count > 0) {
+            pw.print(" mean=");
+            pw.print(totalNanos / count / 1000);
+            pw.print("us p50<");
+            pw.print(getPercentileMicros(50));
+            pw.print("us p90<");
+            pw.print(getPercentileMicros(90));
+            pw.print("us p99<");
+            pw.print(getPercentileMicros(99));
+            pw.print("us max=");
+            pw.print(maxNanos / 1000);
+            pw.print("us");
+        }
+        pw.println();
+    }
+}
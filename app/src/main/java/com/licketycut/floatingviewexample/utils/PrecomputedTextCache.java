@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.text.PrecomputedTextCompat;
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Simple singleton class to measure text off the main thread
+ * and cache the results so identical text is only shaped once.
+ */
+public class PrecomputedTextCache {
+    // Maximum number of precomputed texts we will keep around.
+    private static final int MAX_ENTRIES = 32;
+
+    // One and only instance of our singleton class.
+    private static final PrecomputedTextCache ourInstance = new PrecomputedTextCache();
+
+    public static PrecomputedTextCache getInstance() {
+        return ourInstance;
+    }
+
+    // Precomputed text is independent of the layout width, so we key on the text and style.
+    private final LruCache<Key, PrecomputedTextCompat> cache = new LruCache<>(MAX_ENTRIES);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Text queued or being precomputed on our background thread, so callers can wait for it.
+    private final Map<Key, Future<PrecomputedTextCompat>> pending = new HashMap<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private PrecomputedTextCache() { }
+
+    /** Get previously precomputed text or null if it has not been computed yet. */
+    public PrecomputedTextCompat get(CharSequence text, PrecomputedTextCompat.Params params) {
+        return cache.get(new Key(text, params));
+    }
+
+    /**
+     * Precompute text on our background thread and call back on the main thread.
+     * If the text is already cached the callback is made immediately.
+     */
+    public void precompute(final CharSequence text, final PrecomputedTextCompat.Params params,
+                           final OnPrecomputedListener listener) {
+        final Key key = new Key(text, params);
+        PrecomputedTextCompat cached = cache.get(key);
+        if (cached != null) {
+            listener.onPrecomputed(text, cached);
+            return;
+        }
+
+        FutureTask<PrecomputedTextCompat> task = new FutureTask<>(
+                new Callable<PrecomputedTextCompat>() {
+            @Override
+            public PrecomputedTextCompat call() {
+                final PrecomputedTextCompat precomputed = PrecomputedTextCompat.create(text, params);
+                cache.put(key, precomputed);
+                synchronized (pending) {
+                    pending.remove(key);
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onPrecomputed(text, precomputed);
+                    }
+                });
+                return precomputed;
+            }
+        });
+        synchronized (pending) {
+            pending.put(key, task);
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * Get precomputed text straight away. If it is being precomputed on our background
+     * thread we wait up to the timeout for it, otherwise we precompute it ourselves.
+     */
+    public PrecomputedTextCompat getNow(CharSequence text, PrecomputedTextCompat.Params params,
+                                        long timeoutMs) {
+        Key key = new Key(text, params);
+        PrecomputedTextCompat precomputed = cache.get(key);
+        if (precomputed != null) {
+            return precomputed;
+        }
+
+        Future<PrecomputedTextCompat> future;
+        synchronized (pending) {
+            future = pending.get(key);
+        }
+        if (future != null) {
+            try {
+                return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Try again ourselves below.
+            } catch (TimeoutException e) {
+                // It's still queued behind other text, precompute it ourselves.
+            }
+        }
+
+        precomputed = PrecomputedTextCompat.create(text, params);
+        cache.put(key, precomputed);
+        return precomputed;
+    }
+
+    /** Drop all cached text, called when memory is low. */
+    public void clear() {
+        cache.evictAll();
+    }
+
+    /** Callback made on the main thread once text has been precomputed. */
+    public interface OnPrecomputedListener {
+
+        void onPrecomputed(CharSequence text, PrecomputedTextCompat precomputed);
+    }
+
+    /** Cache key made up of the text and the text style it was measured with. */
+    private static final class Key {
+        private final String text;
+        private final PrecomputedTextCompat.Params params;
+
+        Key(CharSequence text, PrecomputedTextCompat.Params params) {
+            this.text = text.toString();
+            this.params = params;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return text.equals(key.text) && params.equals(key.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * text.hashCode() + params.hashCode();
+        }
+    }
+}
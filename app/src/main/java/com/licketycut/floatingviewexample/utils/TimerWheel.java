@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Simple singleton hashed timer wheel shared by all floating views for long presses,
+ * auto dismissal and idle timeouts. Timeouts are preallocated by their owners,
+ * so scheduling and cancelling are O(1) and allocation free, and a single
+ * main looper callback wakes us only when the nearest occupied bucket is due.
+ * Must only be used from the main thread.
+ */
+public class TimerWheel {
+    // Resolution of our timeouts.
+    private static final long TICK_MS = 10;
+    // Number of buckets, a power of two so we can mask rather than divide.
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    // Extra list holding timeouts which have expired and are waiting for their callback.
+    private static final int EXPIRED = WHEEL_SIZE;
+    private static final int NOT_SCHEDULED = -1;
+
+    // One and only instance of our singleton class.
+    private static final TimerWheel ourInstance = new TimerWheel();
+
+    public static TimerWheel getInstance() {
+        return ourInstance;
+    }
+
+    // Heads of the doubly linked timeout list in each bucket.
+    private final Timeout[] buckets = new Timeout[WHEEL_SIZE + 1];
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final long startTime = SystemClock.uptimeMillis();
+
+    // The last tick we have processed.
+    private long processedTick = 0;
+    private int numScheduled = 0;
+    private boolean tickPosted = false;
+    private long nextTickTime;
+
+    // Number of times we have woken the looper, for diagnostics.
+    private long numWakeups = 0;
+
+    private TimerWheel() { }
+
+    /**
+     * Schedule a timeout, rescheduling it if it is already pending.
+     *
+     * @param timeout   Timeout to call back.
+     * @param delayMs   Delay before the callback, rounded up to our tick resolution.
+     */
+    public void schedule(Timeout timeout, long delayMs) {
+        cancel(timeout);
+
+        long nowTick = getCurrentTick();
+        if (numScheduled == 0) {
+            // There is nothing to expire between our last tick and now, so skip ahead.
+            processedTick = Math.max(processedTick, nowTick);
+        }
+        long deadlineTick = (SystemClock.uptimeMillis() + Math.max(delayMs, 0) - startTime
+                + TICK_MS - 1) / TICK_MS;
+        deadlineTick = Math.max(deadlineTick, processedTick + 1);
+
+        timeout.remainingRounds = (deadlineTick - processedTick - 1) / WHEEL_SIZE;
+        link(timeout, (int) (deadlineTick & WHEEL_MASK));
+        scheduleNextTick();
+    }
+
+    /** Cancel a timeout if it is pending. */
+    public void cancel(Timeout timeout) {
+        if (timeout.bucket != NOT_SCHEDULED) {
+            unlink(timeout);
+        }
+    }
+
+    public int getNumScheduled() {
+        return numScheduled;
+    }
+
+    public long getNumWakeups() {
+        return numWakeups;
+    }
+
+    private long getCurrentTick() {
+        return (SystemClock.uptimeMillis() - startTime) / TICK_MS;
+    }
+
+    /** Our single looper callback, expire everything due and wait for the next bucket. */
+    private final Runnable tickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            tickPosted = false;
+            numWakeups++;
+
+            long nowTick = getCurrentTick();
+            while (processedTick < nowTick) {
+                processedTick++;
+                expireBucket((int) (processedTick & WHEEL_MASK));
+            }
+
+            // Make callbacks last, they are free to schedule and cancel timeouts.
+            while (buckets[EXPIRED] != null) {
+                Timeout timeout = buckets[EXPIRED];
+                unlink(timeout);
+                timeout.onTimeout();
+            }
+
+            scheduleNextTick();
+        }
+    };
+
+    private void expireBucket(int bucket) {
+        Timeout timeout = buckets[bucket];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds <= 0) {
+                unlink(timeout);
+                link(timeout, EXPIRED);
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    /** Post our looper callback for the nearest occupied bucket, if there is one. */
+    private void scheduleNextTick() {
+        if (numScheduled == 0) {
+            if (tickPosted) {
+                handler.removeCallbacks(tickRunnable);
+                tickPosted = false;
+            }
+            return;
+        }
+
+        int ticks = 1;
+        while (ticks < WHEEL_SIZE
+                && buckets[(int) ((processedTick + ticks) & WHEEL_MASK)] == null) {
+            ticks++;
+        }
+        long when = startTime + (processedTick + ticks) * TICK_MS;
+
+        if (!tickPosted || when < nextTickTime) {
+            handler.removeCallbacks(tickRunnable);
+            handler.postAtTime(tickRunnable, when);
+            tickPosted = true;
+            nextTickTime = when;
+        }
+    }
+
+    /** Begin methods to maintain our intrusive bucket lists. */
+    private void link(Timeout timeout, int bucket) {
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[bucket] = timeout;
+        numScheduled++;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.next = null;
+        timeout.prev = null;
+        timeout.bucket = NOT_SCHEDULED;
+        numScheduled--;
+    }
+    /* End methods to maintain our intrusive bucket lists. */
+
+    /** A reusable timeout, owners allocate one per purpose and schedule it as often as needed. */
+    public static abstract class Timeout {
+        private Timeout next;
+        private Timeout prev;
+        private int bucket = NOT_SCHEDULED;
+        private long remainingRounds;
+
+        public boolean isScheduled() {
+            return bucket != NOT_SCHEDULED;
+        }
+
+        /** Called on the main thread once the timeout has expired. */
+        public abstract void onTimeout();
+    }
+}
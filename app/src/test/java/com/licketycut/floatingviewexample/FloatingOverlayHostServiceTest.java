@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.app.Application;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.robolectric.Shadows.shadowOf;
+
+/** Checks that the overlay host keeps each client's floating views apart and forgets them. */
+@RunWith(RobolectricTestRunner.class)
+public class FloatingOverlayHostServiceTest {
+
+    private Application application;
+    private FloatingOverlayHostService service;
+    private Messenger host;
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.application;
+        service = FloatingViewTestSupport.createService(FloatingOverlayHostService.class);
+        Intent intent = new Intent(application, FloatingOverlayHostService.class);
+        intent.setAction(FloatingOverlayHostService.ACTION_BIND_REMOTE);
+        host = new Messenger(service.onBind(intent));
+    }
+
+    @Test
+    public void clientsReusingIdsDontReplaceEachOther() throws RemoteException {
+        int connections = shadowOf(application).getBoundServiceConnections().size();
+        Messenger first = newClient();
+        Messenger second = newClient();
+
+        // Both clients start their ids from zero.
+        send(first, attachButton(0));
+        send(second, attachButton(0));
+        FloatingViewTestSupport.idle();
+        assertEquals(2, service.getNumHostedViews());
+        assertEquals(2, service.getNumFloatingViews());
+
+        send(first, detach(0));
+        FloatingViewTestSupport.idle();
+        assertEquals(1, service.getNumHostedViews());
+        assertEquals(1, service.getNumFloatingViews());
+        // Detached floating views no longer hold a connection to the host.
+        assertEquals(connections + 1, shadowOf(application).getBoundServiceConnections().size());
+
+        // Reusing an id replaces only that client's floating view.
+        send(second, attachButton(0));
+        FloatingViewTestSupport.idle();
+        assertEquals(1, service.getNumHostedViews());
+        assertEquals(1, service.getNumFloatingViews());
+    }
+
+    @Test
+    public void selfDetachedFloatingViewsAreForgotten() throws RemoteException {
+        int connections = shadowOf(application).getBoundServiceConnections().size();
+        Messenger client = newClient();
+        send(client, attachButton(0), attachButton(1), attachButton(2));
+        FloatingViewTestSupport.idle();
+        assertEquals(3, service.getNumHostedViews());
+
+        // Evicted floating views detach themselves without the client asking.
+        service.setAttachedViewBudget(1, 0, FloatingViewService.EVICT_DETACH);
+        assertEquals(2, service.getNumDetachEvictions());
+        assertEquals(1, service.getNumHostedViews());
+
+        send(client, detachAll());
+        FloatingViewTestSupport.idle();
+        assertEquals(0, service.getNumHostedViews());
+        assertEquals(0, service.getNumFloatingViews());
+        assertEquals(connections, shadowOf(application).getBoundServiceConnections().size());
+    }
+
+    private static Messenger newClient() {
+        return new Messenger(new Handler(Looper.getMainLooper()));
+    }
+
+    private void send(Messenger client, Bundle... commands) throws RemoteException {
+        ArrayList<Bundle> batch = new ArrayList<>();
+        for (Bundle command : commands) {
+            batch.add(command);
+        }
+        Message msg = Message.obtain(null, FloatingOverlayHostService.MSG_COMMANDS);
+        Bundle data = new Bundle();
+        data.putParcelableArrayList(FloatingOverlayHostService.KEY_COMMANDS, batch);
+        msg.setData(data);
+        msg.replyTo = client;
+        host.send(msg);
+    }
+
+    private static Bundle attachButton(int id) {
+        Bundle command = newCommand(FloatingOverlayHostService.CMD_ATTACH_BUTTON, id);
+        command.putString(FloatingOverlayHostService.KEY_TEXT, "Button " + id);
+        command.putString(FloatingOverlayHostService.KEY_CLICK_ACTION, "click");
+        command.putString(FloatingOverlayHostService.KEY_EXIT_ACTION, "exit");
+        return command;
+    }
+
+    private static Bundle detach(int id) {
+        return newCommand(FloatingOverlayHostService.CMD_DETACH, id);
+    }
+
+    private static Bundle detachAll() {
+        return newCommand(FloatingOverlayHostService.CMD_DETACH_ALL, -1);
+    }
+
+    private static Bundle newCommand(int command, int id) {
+        Bundle bundle = new Bundle();
+        bundle.putInt(FloatingOverlayHostService.KEY_COMMAND, command);
+        bundle.putInt(FloatingOverlayHostService.KEY_ID, id);
+        return bundle;
+    }
+}
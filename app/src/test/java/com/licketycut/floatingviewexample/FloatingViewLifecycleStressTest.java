@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.app.Application;
+
+import com.licketycut.floatingviewexample.floatingviews.FloatingButtonView;
+import com.licketycut.floatingviewexample.floatingviews.FloatingInfoView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Repeats floating view lifecycles and checks that receivers, service connections,
+ * registry entries and the floating views themselves are all released.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FloatingViewLifecycleStressTest {
+
+    private static final int NUM_CYCLES = 2000;
+    // Floating views we hold weakly to check they are collected, one every this many cycles.
+    private static final int SAMPLE_INTERVAL = 100;
+    private static final int NUM_SERVICE_RESTARTS = 20;
+    private static final int VIEWS_PER_RESTART = 10;
+    private static final int NUM_DISMISS_CYCLES = 500;
+    private static final long AUTO_DISMISS_MS = 100;
+
+    private Application application;
+    private FloatingViewService service;
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.application;
+        service = FloatingViewTestSupport.createService(FloatingViewService.class);
+    }
+
+    @Test
+    public void attachDetachUnbindCyclesReleaseEverything() {
+        int receivers = FloatingView.getNumRegisteredReceivers();
+        int connections = shadowOf(application).getBoundServiceConnections().size();
+        List<WeakReference<FloatingView>> sampled = new ArrayList<>();
+
+        for (int i = 0; i < NUM_CYCLES; i++) {
+            FloatingView floatingView = i % 2 == 0
+                    ? new FloatingButtonView(application, "Button", "click", "exit")
+                    : new FloatingInfoView(application, "Title", "Text");
+            floatingView.attachToWindow(application, false);
+            FloatingViewTestSupport.idle();
+            assertTrue(floatingView.isAttached());
+
+            floatingView.detachFromWindow(false);
+            floatingView.unbindFloatingViewService();
+            FloatingViewTestSupport.idle();
+            assertEquals(FloatingView.STATE_CREATED, floatingView.getState());
+
+            if (i % SAMPLE_INTERVAL == 0) {
+                sampled.add(new WeakReference<>(floatingView));
+            }
+        }
+
+        assertEquals(receivers, FloatingView.getNumRegisteredReceivers());
+        assertEquals(connections, shadowOf(application).getBoundServiceConnections().size());
+        assertEquals(0, service.getNumFloatingViews());
+        for (WeakReference<FloatingView> reference : sampled) {
+            assertTrue(FloatingViewTestSupport.awaitCollected(reference));
+        }
+    }
+
+    @Test
+    public void selfDismissedFloatingViewsUnbindThemselves() {
+        int receivers = FloatingView.getNumRegisteredReceivers();
+        int connections = shadowOf(application).getBoundServiceConnections().size();
+        List<WeakReference<FloatingView>> sampled = new ArrayList<>();
+
+        for (int i = 0; i < NUM_DISMISS_CYCLES; i++) {
+            FloatingInfoView floatingView = new FloatingInfoView(application, "Title", "Text");
+            floatingView.setAutoDismissDelay(AUTO_DISMISS_MS);
+            floatingView.attachToWindow(application, false);
+            FloatingViewTestSupport.idle();
+            assertTrue(floatingView.isAttached());
+
+            // Nobody unbinds us, we dismiss ourselves once our delay has passed.
+            FloatingViewTestSupport.idleFor(AUTO_DISMISS_MS * 2);
+            assertEquals(FloatingView.STATE_CREATED, floatingView.getState());
+            assertEquals(receivers, FloatingView.getNumRegisteredReceivers());
+            assertEquals(connections,
+                    shadowOf(application).getBoundServiceConnections().size());
+
+            if (i % SAMPLE_INTERVAL == 0) {
+                sampled.add(new WeakReference<FloatingView>(floatingView));
+            }
+        }
+
+        assertEquals(0, service.getNumFloatingViews());
+        for (WeakReference<FloatingView> reference : sampled) {
+            assertTrue(FloatingViewTestSupport.awaitCollected(reference));
+        }
+    }
+
+    @Test
+    public void serviceCloseUnbindsEveryFloatingView() {
+        int receivers = FloatingView.getNumRegisteredReceivers();
+        int connections = shadowOf(application).getBoundServiceConnections().size();
+        List<WeakReference<FloatingView>> dropped = new ArrayList<>();
+
+        for (int restart = 0; restart < NUM_SERVICE_RESTARTS; restart++) {
+            for (int i = 0; i < VIEWS_PER_RESTART; i++) {
+                FloatingView floatingView =
+                        new FloatingButtonView(application, "Button", "click", "exit");
+                floatingView.attachToWindow(application, false);
+                dropped.add(new WeakReference<>(floatingView));
+            }
+            FloatingViewTestSupport.idle();
+            assertEquals(VIEWS_PER_RESTART, service.getNumFloatingViews());
+
+            // Destroying the service detaches everything and broadcasts its close intent,
+            // which every floating view answers by unbinding.
+            service.onDestroy();
+            FloatingViewTestSupport.idle();
+            assertEquals(receivers, FloatingView.getNumRegisteredReceivers());
+            assertEquals(connections,
+                    shadowOf(application).getBoundServiceConnections().size());
+            assertEquals(0, service.getNumFloatingViews());
+
+            service = FloatingViewTestSupport.createService(FloatingViewService.class);
+        }
+
+        for (WeakReference<FloatingView> reference : dropped) {
+            assertTrue(FloatingViewTestSupport.awaitCollected(reference));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.app.Application;
+import android.view.Gravity;
+
+import com.licketycut.floatingviewexample.floatingviews.FloatingButtonView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks that a display change reflows every floating view with one window update each. */
+@RunWith(RobolectricTestRunner.class)
+public class FloatingViewReflowTest {
+
+    private static final int NUM_VIEWS = 50;
+    // Configuration changes we deliver within a single frame, as a rotation can.
+    private static final int NUM_CONFIGURATION_CHANGES = 3;
+
+    private Application application;
+    private FloatingViewService service;
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.application;
+        service = FloatingViewTestSupport.createService(FloatingViewService.class);
+    }
+
+    @Test
+    public void rotationReflowsOncePerFrame() {
+        List<FloatingView> floatingViews = new ArrayList<>();
+        for (int i = 0; i < NUM_VIEWS; i++) {
+            FloatingView floatingView =
+                    new FloatingButtonView(application, "Button " + i, "click", "exit");
+            floatingView.attachToWindow(application, false);
+            floatingViews.add(floatingView);
+        }
+        FloatingViewTestSupport.idleFrame();
+
+        // Spread our floating views across the display from its top left corner.
+        for (int i = 0; i < NUM_VIEWS; i++) {
+            FloatingView floatingView = floatingViews.get(i);
+            assertTrue(floatingView.isAttached());
+            floatingView.setLayoutGravity(Gravity.TOP | Gravity.LEFT);
+            floatingView.setLayoutPosition(10 + (i % 10) * 20, 10 + (i / 10) * 60);
+        }
+
+        long[] windowUpdates = new long[NUM_VIEWS];
+        for (int i = 0; i < NUM_VIEWS; i++) {
+            windowUpdates[i] = floatingViews.get(i).getNumWindowUpdates();
+        }
+        int reflows = service.getNumReflows();
+        long reflowUpdates = service.getNumReflowWindowUpdates();
+
+        RuntimeEnvironment.setQualifiers("+land");
+        for (int i = 0; i < NUM_CONFIGURATION_CHANGES; i++) {
+            service.onConfigurationChanged(application.getResources().getConfiguration());
+        }
+        // Nothing moves until the next frame.
+        assertEquals(reflows, service.getNumReflows());
+        assertEquals(0, sumWindowUpdates(floatingViews, windowUpdates));
+
+        FloatingViewTestSupport.idleFrame();
+        assertEquals(reflows + 1, service.getNumReflows());
+
+        long moved = service.getNumReflowWindowUpdates() - reflowUpdates;
+        assertTrue(moved > 0);
+        assertTrue(moved <= NUM_VIEWS);
+        // Each floating view which moved cost exactly one window update.
+        assertEquals(moved, sumWindowUpdates(floatingViews, windowUpdates));
+
+        for (FloatingView floatingView : floatingViews) {
+            floatingView.detachFromWindow(false);
+        }
+    }
+
+    private static long sumWindowUpdates(List<FloatingView> floatingViews, long[] before) {
+        long sum = 0;
+        for (int i = 0; i < floatingViews.size(); i++) {
+            sum += floatingViews.get(i).getNumWindowUpdates() - before[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.app.Application;
+
+import com.licketycut.floatingviewexample.floatingviews.FloatingButtonView;
+import com.licketycut.floatingviewexample.floatingviews.FloatingInfoView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that floating views their owner has dropped are collected while still bound,
+ * so neither our service connection nor our receiver keeps them alive,
+ * and that floating views which dismiss themselves unbind as well.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FloatingViewRegistryTest {
+
+    private static final long AUTO_DISMISS_MS = 100;
+
+    private Application application;
+    private FloatingViewService service;
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.application;
+        service = FloatingViewTestSupport.createService(FloatingViewService.class);
+    }
+
+    @Test
+    public void selfDismissedFloatingViewIsUnboundAndCollected() {
+        int receivers = FloatingView.getNumRegisteredReceivers();
+        int connections = shadowOf(application).getBoundServiceConnections().size();
+        WeakReference<FloatingView> reference = attachAndSelfDismiss();
+        FloatingViewTestSupport.idle();
+
+        // Dismissing ourselves leaves nothing bound on our behalf.
+        assertEquals(receivers, FloatingView.getNumRegisteredReceivers());
+        assertEquals(connections, shadowOf(application).getBoundServiceConnections().size());
+        assertTrue(FloatingViewTestSupport.awaitCollected(reference));
+        assertEquals(0, service.getNumFloatingViews());
+    }
+
+    @Test
+    public void droppedUnattachedFloatingViewIsExpunged() {
+        int collected = service.getNumCollectedFloatingViews();
+        WeakReference<FloatingView> reference = createBound();
+        assertEquals(1, service.getNumFloatingViews());
+
+        assertTrue(FloatingViewTestSupport.awaitCollected(reference));
+        assertEquals(0, service.getNumFloatingViews());
+        assertEquals(collected + 1, service.getNumCollectedFloatingViews());
+    }
+
+    @Test
+    public void attachedFloatingViewIsPinned() {
+        WeakReference<FloatingView> reference = attach();
+
+        assertFalse(FloatingViewTestSupport.awaitCollected(reference));
+        assertEquals(1, service.getNumFloatingViews());
+        reference.get().detachFromWindow(false);
+    }
+
+    /** Attach a floating view then let it dismiss itself once its auto dismiss delay passes. */
+    private WeakReference<FloatingView> attachAndSelfDismiss() {
+        FloatingInfoView floatingView = new FloatingInfoView(application, "Title", "Text");
+        floatingView.setAutoDismissDelay(AUTO_DISMISS_MS);
+        floatingView.attachToWindow(application, false);
+        FloatingViewTestSupport.idle();
+        assertTrue(floatingView.isAttached());
+        FloatingViewTestSupport.idleFor(AUTO_DISMISS_MS * 2);
+        assertEquals(FloatingView.STATE_CREATED, floatingView.getState());
+        return new WeakReference<FloatingView>(floatingView);
+    }
+
+    private WeakReference<FloatingView> createBound() {
+        FloatingView floatingView = new FloatingButtonView(application, "Button", "click", "exit");
+        FloatingViewTestSupport.idle();
+        assertEquals(FloatingView.STATE_READY, floatingView.getState());
+        return new WeakReference<>(floatingView);
+    }
+
+    private WeakReference<FloatingView> attach() {
+        FloatingView floatingView = new FloatingButtonView(application, "Button", "click", "exit");
+        floatingView.attachToWindow(application, false);
+        FloatingViewTestSupport.idle();
+        assertTrue(floatingView.isAttached());
+        return new WeakReference<>(floatingView);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.app.Application;
+import android.content.Context;
+import android.view.ViewGroup;
+
+import com.licketycut.floatingviewexample.floatingviews.FloatingBubbleView;
+import com.licketycut.floatingviewexample.floatingviews.FloatingButtonView;
+import com.licketycut.floatingviewexample.floatingviews.FloatingInfoView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks that floating views survive a snapshot round trip, within our restore budget. */
+@RunWith(RobolectricTestRunner.class)
+public class FloatingViewSnapshotTest {
+
+    private static final String SNAPSHOT_NAME = "FloatingViewSnapshotTest.snapshot";
+    private static final int NUM_VIEWS = 50;
+    // Size we lay a floating view out at, which the display is larger than.
+    private static final int LAID_OUT_SIZE = 100;
+    private static final String BROKEN_TYPE = "FloatingViewSnapshotTest.Broken";
+
+    private Application application;
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.application;
+        // Creating the service registers the restorers for our floating view types.
+        FloatingViewTestSupport.createService(FloatingViewService.class);
+    }
+
+    @Test
+    public void restoresFiftyFloatingViewsWithinBudget() throws IOException {
+        List<FloatingView> floatingViews = new ArrayList<>();
+        FloatingViewSnapshot snapshot = new FloatingViewSnapshot(application, SNAPSHOT_NAME);
+        for (int i = 0; i < NUM_VIEWS; i++) {
+            FloatingView floatingView;
+            switch (i % 3) {
+                case 0:
+                    floatingView = new FloatingButtonView(application, "Button " + i,
+                            "click", "exit");
+                    break;
+                case 1:
+                    floatingView = new FloatingInfoView(application, "Title " + i, "Text " + i,
+                            i % 2 == 0);
+                    break;
+                default:
+                    floatingView = new FloatingBubbleView(application, "Bubble " + i,
+                            "Title " + i, "Text " + i, "exit");
+                    break;
+            }
+            floatingViews.add(floatingView);
+            snapshot.put(floatingView);
+        }
+        snapshot.flush();
+
+        long start = System.nanoTime();
+        List<FloatingView> restored = new FloatingViewSnapshot(application, SNAPSHOT_NAME)
+                .restore(application, FloatingViewService.class,
+                        FloatingViewService.RESTORE_BUDGET_MS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(NUM_VIEWS, restored.size());
+        assertTrue("Restore took " + elapsedMs + "ms",
+                elapsedMs <= FloatingViewService.RESTORE_BUDGET_MS);
+        for (int i = 0; i < NUM_VIEWS; i++) {
+            assertEquals(floatingViews.get(i).getClass(), restored.get(i).getClass());
+            assertArrayEquals(encodeContent(floatingViews.get(i)),
+                    encodeContent(restored.get(i)));
+        }
+    }
+
+    @Test
+    public void restoresStringsLongerThanModifiedUtf8Allows() throws IOException {
+        // Modified UTF-8 is limited to 65535 bytes, and non ascii characters take several.
+        StringBuilder title = new StringBuilder();
+        while (title.length() < 70000) {
+            title.append("Floating \u00e9\u4e16 ");
+        }
+        FloatingView floatingView = new FloatingInfoView(application, title.toString(), "Text");
+
+        FloatingViewSnapshot snapshot = new FloatingViewSnapshot(application, SNAPSHOT_NAME);
+        snapshot.put(floatingView);
+        assertEquals(1, snapshot.size());
+        snapshot.flush();
+
+        List<FloatingView> restored = new FloatingViewSnapshot(application, SNAPSHOT_NAME)
+                .restore(application, FloatingViewService.class,
+                        FloatingViewService.RESTORE_BUDGET_MS);
+        assertEquals(1, restored.size());
+        assertArrayEquals(encodeContent(floatingView), encodeContent(restored.get(0)));
+    }
+
+    @Test
+    public void restoresNormalizedPositionBeforeLayout() throws IOException {
+        // Our position is normalized against our size, which a restored view doesn't have yet.
+        FloatingView floatingView = new FloatingButtonView(application, "Button", "click", "exit");
+        floatingView.getRootView().layout(0, 0, LAID_OUT_SIZE, LAID_OUT_SIZE);
+        floatingView.setLayoutPosition(LAID_OUT_SIZE / 2, LAID_OUT_SIZE);
+
+        FloatingViewSnapshot snapshot = new FloatingViewSnapshot(application, SNAPSHOT_NAME);
+        snapshot.put(floatingView);
+        snapshot.flush();
+
+        List<FloatingView> restored = new FloatingViewSnapshot(application, SNAPSHOT_NAME)
+                .restore(application, FloatingViewService.class,
+                        FloatingViewService.RESTORE_BUDGET_MS);
+        assertEquals(1, restored.size());
+        assertEquals(0, restored.get(0).getRootView().getWidth());
+        assertArrayEquals(encodeLayout(floatingView), encodeLayout(restored.get(0)));
+    }
+
+    @Test
+    public void restoresPinchedButtonSize() throws IOException {
+        FloatingView floatingView = new FloatingButtonView(application, "Button", "click", "exit");
+        floatingView.setLayoutSize(LAID_OUT_SIZE * 2, LAID_OUT_SIZE);
+
+        FloatingViewSnapshot snapshot = new FloatingViewSnapshot(application, SNAPSHOT_NAME);
+        snapshot.put(floatingView);
+        snapshot.flush();
+
+        List<FloatingView> restored = new FloatingViewSnapshot(application, SNAPSHOT_NAME)
+                .restore(application, FloatingViewService.class,
+                        FloatingViewService.RESTORE_BUDGET_MS);
+        assertEquals(1, restored.size());
+        // Our round button fits the smaller side of the restored window.
+        ViewGroup.LayoutParams layoutParams = restored.get(0).getRootView()
+                .findViewById(R.id.button_floating_view).getLayoutParams();
+        assertEquals(LAID_OUT_SIZE, layoutParams.width);
+        assertEquals(LAID_OUT_SIZE, layoutParams.height);
+    }
+
+    @Test
+    public void skipsRecordsWhoseRestorerThrows() throws IOException {
+        FloatingViewSnapshot.registerType(BROKEN_TYPE, new FloatingView.SnapshotRestorer() {
+            @Override
+            public FloatingView restore(Context context,
+                                        Class<? extends FloatingViewService> serviceClass,
+                                        int layoutId, DataInputStream in) {
+                throw new IllegalStateException("Broken restorer");
+            }
+        });
+        FloatingView broken = new FloatingInfoView(application, "Broken", "Text") {
+            @Override
+            protected String getSnapshotType() {
+                return BROKEN_TYPE;
+            }
+        };
+
+        FloatingViewSnapshot snapshot = new FloatingViewSnapshot(application, SNAPSHOT_NAME);
+        snapshot.put(new FloatingInfoView(application, "First", "Text"));
+        snapshot.put(broken);
+        snapshot.put(new FloatingInfoView(application, "Last", "Text"));
+        snapshot.flush();
+
+        List<FloatingView> restored = new FloatingViewSnapshot(application, SNAPSHOT_NAME)
+                .restore(application, FloatingViewService.class,
+                        FloatingViewService.RESTORE_BUDGET_MS);
+        assertEquals(2, restored.size());
+    }
+
+    private static byte[] encodeLayout(FloatingView floatingView) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        floatingView.writeSnapshotLayout(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeContent(FloatingView floatingView) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        floatingView.writeSnapshotContent(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+}
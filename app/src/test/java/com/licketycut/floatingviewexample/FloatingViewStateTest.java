@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.app.Application;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
+
+import com.licketycut.floatingviewexample.floatingviews.FloatingButtonView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks floating view state transitions across binding, unbinding, reconnecting
+ * and concurrent attaches.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FloatingViewStateTest {
+
+    private static final int NUM_THREADS = 8;
+    private static final int ATTACHES_PER_THREAD = 500;
+
+    private Application application;
+    private FloatingViewService service;
+    private final AtomicInteger numAttaches = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.application;
+        service = FloatingViewTestSupport.createService(FloatingViewService.class);
+    }
+
+    @Test
+    public void unbindWhileBindingReturnsToCreated() {
+        FloatingView floatingView = createFloatingView();
+        assertEquals(FloatingView.STATE_BINDING, floatingView.getState());
+
+        floatingView.unbindFloatingViewService();
+        assertEquals(FloatingView.STATE_CREATED, floatingView.getState());
+
+        assertAttachRebinds(floatingView);
+    }
+
+    @Test
+    public void unbindWhileReconnectingReturnsToCreated() {
+        FloatingView floatingView = createFloatingView();
+        FloatingViewTestSupport.idle();
+        assertEquals(FloatingView.STATE_READY, floatingView.getState());
+
+        // The service process died, so we are waiting for the system to reconnect us.
+        List<ServiceConnection> connections = shadowOf(application).getBoundServiceConnections();
+        connections.get(connections.size() - 1).onServiceDisconnected(
+                new ComponentName(application, FloatingViewService.class));
+        assertEquals(FloatingView.STATE_BINDING, floatingView.getState());
+
+        floatingView.unbindFloatingViewService();
+        assertEquals(FloatingView.STATE_CREATED, floatingView.getState());
+
+        assertAttachRebinds(floatingView);
+    }
+
+    @Test
+    public void unbindWhileAttachedDetachesAndReturnsToCreated() {
+        FloatingView floatingView = createFloatingView();
+        floatingView.attachToWindow(application, false);
+        FloatingViewTestSupport.idle();
+        assertEquals(FloatingView.STATE_ATTACHED, floatingView.getState());
+
+        floatingView.unbindFloatingViewService();
+        assertEquals(FloatingView.STATE_CREATED, floatingView.getState());
+        assertEquals(0, service.getNumFloatingViews());
+
+        // Detaching again afterwards changes nothing.
+        floatingView.detachFromWindow(false);
+        assertEquals(FloatingView.STATE_CREATED, floatingView.getState());
+
+        assertAttachRebinds(floatingView);
+    }
+
+    @Test
+    public void attachWhileDisconnectedWaitsForReconnect() {
+        FloatingView floatingView = createFloatingView();
+        floatingView.attachToWindow(application, false);
+        FloatingViewTestSupport.idle();
+        floatingView.detachFromWindow(false);
+        assertEquals(FloatingView.STATE_DETACHED, floatingView.getState());
+
+        // The service process died while we were detached.
+        ComponentName component = new ComponentName(application, FloatingViewService.class);
+        List<ServiceConnection> connections = shadowOf(application).getBoundServiceConnections();
+        ServiceConnection connection = connections.get(connections.size() - 1);
+        connection.onServiceDisconnected(component);
+        assertEquals(FloatingView.STATE_BINDING, floatingView.getState());
+
+        floatingView.attachToWindow(application, false);
+        assertEquals(FloatingView.STATE_BINDING, floatingView.getState());
+
+        // Once the system reconnects us the waiting attach is applied.
+        connection.onServiceConnected(component,
+                service.onBind(new Intent(application, FloatingViewService.class)));
+        assertEquals(FloatingView.STATE_ATTACHED, floatingView.getState());
+        assertEquals(2, numAttaches.get());
+        assertEquals(1, service.getNumFloatingViews());
+
+        floatingView.detachFromWindow(false);
+        floatingView.unbindFloatingViewService();
+    }
+
+    @Test
+    public void concurrentAttachesWhileBindingAttachOnce() throws InterruptedException {
+        final FloatingView floatingView = createFloatingView();
+        assertEquals(FloatingView.STATE_BINDING, floatingView.getState());
+
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[NUM_THREADS];
+        for (int i = 0; i < NUM_THREADS; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < ATTACHES_PER_THREAD; j++) {
+                        floatingView.attachToWindow(application, false);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Every attach was queued while binding, connecting applies them exactly once.
+        FloatingViewTestSupport.idle();
+        assertEquals(FloatingView.STATE_ATTACHED, floatingView.getState());
+        assertEquals(1, numAttaches.get());
+        assertEquals(1, service.getNumFloatingViews());
+
+        floatingView.detachFromWindow(false);
+        floatingView.unbindFloatingViewService();
+        FloatingViewTestSupport.idle();
+        assertEquals(FloatingView.STATE_CREATED, floatingView.getState());
+    }
+
+    private FloatingView createFloatingView() {
+        return new FloatingButtonView(application, "Button", "click", "exit") {
+            @Override
+            protected void onAttached() {
+                super.onAttached();
+                numAttaches.incrementAndGet();
+            }
+        };
+    }
+
+    /** Attaching after we were unbound binds again and attaches once connected. */
+    private void assertAttachRebinds(FloatingView floatingView) {
+        int attaches = numAttaches.get();
+        int binds = FloatingView.getNumBinds();
+        floatingView.attachToWindow(application, false);
+        assertEquals(binds + 1, FloatingView.getNumBinds());
+        assertEquals(FloatingView.STATE_BINDING, floatingView.getState());
+
+        FloatingViewTestSupport.idle();
+        assertTrue(floatingView.isAttached());
+        assertEquals(attaches + 1, numAttaches.get());
+        floatingView.detachFromWindow(false);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.app.Application;
+import android.content.ComponentName;
+import android.content.Intent;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowSettings;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/** Shared setup for Robolectric tests of floating views and the floating view service. */
+final class FloatingViewTestSupport {
+
+    // Times we will run the collector before deciding a reference is being kept alive.
+    private static final int MAX_GC_ATTEMPTS = 50;
+    // Time between frames at 60 frames per second, rounded up.
+    private static final long FRAME_INTERVAL_MS = 17;
+
+    private FloatingViewTestSupport() {
+    }
+
+    /**
+     * Create a floating view service which floating views connect to when they bind,
+     * with draw overlay permission granted. The main looper is paused,
+     * so connections and frames only happen when the test calls {@link #idle()}.
+     */
+    static <T extends FloatingViewService> T createService(Class<T> serviceClass) {
+        ShadowLooper.pauseMainLooper();
+        ShadowSettings.setCanDrawOverlays(true);
+
+        Application application = RuntimeEnvironment.application;
+        T service = Robolectric.buildService(serviceClass).create().get();
+        shadowOf(application).setComponentNameAndServiceForBindService(
+                new ComponentName(application, serviceClass),
+                service.onBind(new Intent(application, serviceClass)));
+        return service;
+    }
+
+    /** Run everything due on the main looper, service connections, broadcasts and frames. */
+    static void idle() {
+        ShadowLooper.idleMainLooper();
+    }
+
+    /** Run everything due on the main looper once the next frame is due, including frames. */
+    static void idleFrame() {
+        ShadowLooper.idleMainLooper(FRAME_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Run everything due on the main looper once the given time has passed. */
+    static void idleFor(long delayMs) {
+        ShadowLooper.idleMainLooper(delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Run the garbage collector until the reference has been cleared or we give up. */
+    static boolean awaitCollected(WeakReference<?> reference) {
+        for (int i = 0; i < MAX_GC_ATTEMPTS && reference.get() != null; i++) {
+            Runtime.getRuntime().gc();
+            Runtime.getRuntime().runFinalization();
+        }
+        return reference.get() == null;
+    }
+}
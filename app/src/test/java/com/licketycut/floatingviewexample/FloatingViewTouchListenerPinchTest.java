@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.app.Application;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.licketycut.floatingviewexample.floatingviews.FloatingButtonView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays a recorded two finger pinch and checks that it costs no window updates
+ * until the pinch ends, when the new size is committed with exactly one.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FloatingViewTouchListenerPinchTest {
+
+    private static final int VIEW_SIZE = 200;
+    // Fingers start further apart than the minimum span a pinch is recognised at.
+    private static final float FIRST_FINGER_X = 10;
+    private static final float SECOND_FINGER_START_X = 310;
+    private static final float FINGER_Y = 100;
+    private static final int NUM_MOVES = 10;
+    // Each move spreads the fingers this much further apart, 10 pixels per side.
+    private static final float SPREAD_PER_MOVE = 20;
+    private static final long MOVE_INTERVAL_MS = 16;
+
+    private Application application;
+    private int resizedWidth, resizedHeight;
+    private int numResizes = 0;
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.application;
+        FloatingViewTestSupport.createService(FloatingViewService.class);
+    }
+
+    @Test
+    public void pinchCommitsOneWindowUpdate() {
+        FloatingView floatingView = new FloatingButtonView(application, "Button", "click", "exit");
+        floatingView.attachToWindow(application, false);
+        FloatingViewTestSupport.idleFrame();
+        assertTrue(floatingView.isAttached());
+
+        View rootView = floatingView.getRootView();
+        int exactly = View.MeasureSpec.makeMeasureSpec(VIEW_SIZE, View.MeasureSpec.EXACTLY);
+        rootView.measure(exactly, exactly);
+        rootView.layout(0, 0, VIEW_SIZE, VIEW_SIZE);
+
+        FloatingViewTouchListener touchListener = new FloatingViewTouchListener(floatingView,
+                FloatingViewTouchListener.ALLOW_RESIZE) {
+            @Override
+            protected boolean onResize(int width, int height) {
+                numResizes++;
+                resizedWidth = width;
+                resizedHeight = height;
+                return true;
+            }
+        };
+        touchListener.setResizeLimits(50, 50, 2 * VIEW_SIZE, 2 * VIEW_SIZE);
+
+        long windowUpdates = floatingView.getNumWindowUpdates();
+        long downTime = 0;
+        long time = downTime;
+        float secondFingerX = SECOND_FINGER_START_X;
+
+        touchListener.onTouch(rootView, obtain(downTime, time, MotionEvent.ACTION_DOWN,
+                FIRST_FINGER_X));
+        time += MOVE_INTERVAL_MS;
+        touchListener.onTouch(rootView, obtain(downTime, time, MotionEvent.ACTION_POINTER_DOWN
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), FIRST_FINGER_X, secondFingerX));
+
+        for (int i = 0; i < NUM_MOVES; i++) {
+            time += MOVE_INTERVAL_MS;
+            secondFingerX += SPREAD_PER_MOVE;
+            touchListener.onTouch(rootView, obtain(downTime, time, MotionEvent.ACTION_MOVE,
+                    FIRST_FINGER_X, secondFingerX));
+            // Scaling the root view costs no window updates.
+            assertEquals(windowUpdates, floatingView.getNumWindowUpdates());
+        }
+        assertTrue(rootView.getScaleX() > 1f);
+
+        time += MOVE_INTERVAL_MS;
+        touchListener.onTouch(rootView, obtain(downTime, time, MotionEvent.ACTION_POINTER_UP
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), FIRST_FINGER_X, secondFingerX));
+        time += MOVE_INTERVAL_MS;
+        touchListener.onTouch(rootView, obtain(downTime, time, MotionEvent.ACTION_UP,
+                FIRST_FINGER_X));
+
+        // The new size is committed once, and the root view is no longer scaled.
+        assertEquals(windowUpdates + 1, floatingView.getNumWindowUpdates());
+        assertEquals(1, numResizes);
+        assertTrue(resizedWidth > VIEW_SIZE && resizedWidth <= 2 * VIEW_SIZE);
+        assertEquals(resizedWidth, resizedHeight);
+        assertEquals(1f, rootView.getScaleX(), 0f);
+        assertEquals(1f, rootView.getScaleY(), 0f);
+
+        floatingView.detachFromWindow(false);
+    }
+
+    /** Obtain a touch event with a finger at each of the x positions. */
+    private static MotionEvent obtain(long downTime, long eventTime, int action, float... xs) {
+        MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[xs.length];
+        MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            properties[i] = new MotionEvent.PointerProperties();
+            properties[i].id = i;
+            properties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+            coords[i] = new MotionEvent.PointerCoords();
+            coords[i].x = xs[i];
+            coords[i].y = FINGER_Y;
+            coords[i].pressure = 1f;
+            coords[i].size = 1f;
+        }
+        return MotionEvent.obtain(downTime, eventTime, action, xs.length, properties, coords,
+                0, 0, 1f, 1f, 0, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+    }
+}
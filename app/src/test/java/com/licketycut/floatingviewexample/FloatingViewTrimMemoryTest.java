@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Adam Claflin [adam.r.claflin@gmail.com].
+ *
+ * Licensed under the Attribution-NonCommercial 4.0 International (CC BY-NC 4.0);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    https://creativecommons.org/licenses/by-nc/4.0/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.licketycut.floatingviewexample;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks which trim memory levels release our caches, and that UI hidden keeps them. */
+@RunWith(RobolectricTestRunner.class)
+public class FloatingViewTrimMemoryTest {
+
+    private Application application;
+    private FloatingViewService service;
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.application;
+        service = FloatingViewTestSupport.createService(FloatingViewService.class);
+    }
+
+    @Test
+    public void releaseCachesLevels() {
+        assertFalse(FloatingView.isReleaseCachesLevel(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertFalse(FloatingView.isReleaseCachesLevel(
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+
+        assertTrue(FloatingView.isReleaseCachesLevel(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+        assertTrue(FloatingView.isReleaseCachesLevel(
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertTrue(FloatingView.isReleaseCachesLevel(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+        assertTrue(FloatingView.isReleaseCachesLevel(ComponentCallbacks2.TRIM_MEMORY_MODERATE));
+        assertTrue(FloatingView.isReleaseCachesLevel(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+    }
+
+    @Test
+    public void uiHiddenKeepsNotificationIcon() {
+        service.startForeground(application);
+        assertTrue(service.isNotificationLargeIconCached());
+
+        // Sent every time our activity goes to the background, which isn't memory pressure.
+        service.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertTrue(service.isNotificationLargeIconCached());
+        service.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertTrue(service.isNotificationLargeIconCached());
+
+        service.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertFalse(service.isNotificationLargeIconCached());
+    }
+
+    @Test
+    public void runningLowReleasesNotificationIcon() {
+        service.startForeground(application);
+        assertTrue(service.isNotificationLargeIconCached());
+
+        service.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertFalse(service.isNotificationLargeIconCached());
+    }
+}